@@ -0,0 +1,15 @@
+package com.practice.onlineShop.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a {@link RequiresRole} method that identifies the calling user. It can be a number or a
+ * {@link com.practice.onlineShop.vos.CustomerOwned} value.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CustomerId {
+}
@@ -0,0 +1,19 @@
+package com.practice.onlineShop.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the method again, in a new transaction, when it fails because of an optimistic locking conflict. The method
+ * must declare {@link com.practice.onlineShop.exceptions.ConcurrentUpdateException}, which is thrown once all the
+ * attempts failed.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+    int maxAttempts() default 5;
+
+    long backoffMillis() default 5;
+}
@@ -1,14 +1,16 @@
 package com.practice.onlineShop.aspects;
 
+import com.practice.onlineShop.logging.EventLogger;
+import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.*;
 import org.springframework.stereotype.Component;
 
-import java.util.Date;
-
 @Aspect
 @Component
+@RequiredArgsConstructor
 public class LogAspect {
+    private final EventLogger eventLogger;
 
     @Pointcut("execution(* com.practice.onlineShop.controllers.ProductController.addProduct(..))")
     public void addProductPointcut(){}
@@ -35,55 +37,42 @@ public class LogAspect {
 
     @Before("com.practice.onlineShop.aspects.LogAspect.addProductPointcut()")
     public void before(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date());
-        System.out.println("ProductVO: " + joinPoint.getArgs()[0]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[1]);
+        eventLogger.log("product.add.before", "productVO", joinPoint.getArgs()[0], "customerId", joinPoint.getArgs()[1]);
     }
 
     @Before("com.practice.onlineShop.aspects.LogAspect.updateProductPointcut()")
     public void beforeUpdate(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date() + " for doing an update");
-        System.out.println("ProductVO: " + joinPoint.getArgs()[0]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[1]);
+        eventLogger.log("product.update.before", "productVO", joinPoint.getArgs()[0], "customerId", joinPoint.getArgs()[1]);
     }
 
     @Before("com.practice.onlineShop.aspects.LogAspect.deliverOrderPointcut()")
     public void beforeDeliver(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date() + " for doing a delivery");
-        System.out.println("OrderId: " + joinPoint.getArgs()[0]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[1]);
+        eventLogger.log("order.deliver.before", "orderId", joinPoint.getArgs()[0], "customerId", joinPoint.getArgs()[1]);
     }
 
     @Before("com.practice.onlineShop.aspects.LogAspect.cancelOrderPointcut()")
     public void beforeCancel(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date() + " for doing a cancellation");
-        System.out.println("OrderId: " + joinPoint.getArgs()[0]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[1]);
+        eventLogger.log("order.cancel.before", "orderId", joinPoint.getArgs()[0], "customerId", joinPoint.getArgs()[1]);
     }
 
     @Before("com.practice.onlineShop.aspects.LogAspect.returnOrderPointcut()")
     public void beforeReturningOrder(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date() + " for doing a return");
-        System.out.println("OrderId: " + joinPoint.getArgs()[0]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[1]);
+        eventLogger.log("order.return.before", "orderId", joinPoint.getArgs()[0], "customerId", joinPoint.getArgs()[1]);
     }
 
     @Before("com.practice.onlineShop.aspects.LogAspect.addStockPointcut()")
     public void beforeAddingStock(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date() + " before adding stock");
-        System.out.println("Product code: " + joinPoint.getArgs()[0]);
-        System.out.println("Quantity: " + joinPoint.getArgs()[1]);
-        System.out.println("The user had id: " + joinPoint.getArgs()[2]);
+        eventLogger.log("product.addStock.before", "productCode", joinPoint.getArgs()[0],
+                "quantity", joinPoint.getArgs()[1], "customerId", joinPoint.getArgs()[2]);
     }
 
     @After("com.practice.onlineShop.aspects.LogAspect.addProductPointcut()")
     public void after(JoinPoint joinPoint) {
-        System.out.println("In after aspect" + new Date());
+        eventLogger.log("product.add.after");
     }
 
-    @Before("com.practice.onlineShop.aspects.LogAspect.addProductPointcut()")
+    @Before("com.practice.onlineShop.aspects.LogAspect.addOrderProductPointcut()")
     public void beforeAddingAnOrder(JoinPoint joinPoint) {
-        System.out.println("In before aspect" + new Date());
-        System.out.println("OrderVO: " + joinPoint.getArgs()[0]);
+        eventLogger.log("order.add.before", "orderVO", joinPoint.getArgs()[0]);
     }
 }
@@ -0,0 +1,38 @@
+package com.practice.onlineShop.aspects;
+
+import com.practice.onlineShop.metrics.MethodMetrics;
+import com.practice.onlineShop.metrics.MetricsRegistry;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class MetricsAspect {
+    private final MetricsRegistry metricsRegistry;
+
+    @Pointcut("within(com.practice.onlineShop.controllers..*) || within(com.practice.onlineShop.services..*)")
+    public void timedMethod() {}
+
+    @Around("com.practice.onlineShop.aspects.MetricsAspect.timedMethod()")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodMetrics metrics = metricsRegistry.getMethodMetrics(((MethodSignature) joinPoint.getSignature()).getMethod());
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            metrics.recordSuccess(System.nanoTime() - start);
+            return result;
+        } catch (Throwable throwable) {
+            metrics.recordError(System.nanoTime() - start, throwable);
+            throw throwable;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.practice.onlineShop.aspects;
+
+import com.practice.onlineShop.annotations.RetryOnConflict;
+import com.practice.onlineShop.exceptions.ConcurrentUpdateException;
+import com.practice.onlineShop.metrics.MetricsRegistry;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ordered before the transaction interceptor, so every attempt runs in its own transaction and a conflict detected
+ * at commit time can still be retried. Attempts are spaced by an exponential backoff with full jitter.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@RequiredArgsConstructor
+public class RetryOnConflictAspect {
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Around("@annotation(retryOnConflict)")
+    public Object retry(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return joinPoint.proceed();
+            } catch (OptimisticLockingFailureException exception) {
+                if (attempt >= retryOnConflict.maxAttempts()) {
+                    metricsRegistry.recordOptimisticLockConflict(false);
+                    throw new ConcurrentUpdateException();
+                }
+                metricsRegistry.recordOptimisticLockConflict(true);
+                backoff(retryOnConflict.backoffMillis(), attempt);
+            }
+        }
+    }
+
+    private void backoff(long backoffMillis, int attempt) throws InterruptedException {
+        long maxBackoff = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt - 1, 20));
+        if (maxBackoff > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxBackoff + 1));
+        }
+    }
+}
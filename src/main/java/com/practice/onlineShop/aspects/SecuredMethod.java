@@ -0,0 +1,27 @@
+package com.practice.onlineShop.aspects;
+
+import com.practice.onlineShop.vos.CustomerOwned;
+
+public class SecuredMethod {
+    private final int customerIdIndex;
+    private final boolean customerOwned;
+    private final int requiredRolesMask;
+
+    public SecuredMethod(int customerIdIndex, boolean customerOwned, int requiredRolesMask) {
+        this.customerIdIndex = customerIdIndex;
+        this.customerOwned = customerOwned;
+        this.requiredRolesMask = requiredRolesMask;
+    }
+
+    public Long getCustomerId(Object[] args) {
+        Object customerId = args[customerIdIndex];
+        if (customerOwned) {
+            customerId = customerId == null ? null : ((CustomerOwned) customerId).getUserId();
+        }
+        return customerId == null ? null : ((Number) customerId).longValue();
+    }
+
+    public boolean isAllowed(int rolesMask) {
+        return (rolesMask & requiredRolesMask) != 0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.practice.onlineShop.aspects;
+
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.vos.CustomerOwned;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves every {@link RequiresRole} method of the application beans into a {@link SecuredMethod} once, after all
+ * singletons are created, so that {@link SecurityAspect} doesn't need reflection on each call.
+ */
+@Component
+@RequiredArgsConstructor
+public class SecuredMethodRegistry implements SmartInitializingSingleton {
+    private final ApplicationContext applicationContext;
+    private final Map<Method, SecuredMethod> securedMethods = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String beanName : applicationContext.getBeanNamesForType(Object.class, false, false)) {
+            Class<?> beanType = applicationContext.getType(beanName);
+            if (beanType == null || !beanType.getName().startsWith("com.practice.onlineShop")) {
+                continue;
+            }
+            Map<Method, SecuredMethod> beanSecuredMethods = MethodIntrospector.selectMethods(ClassUtils.getUserClass(beanType),
+                    (MethodIntrospector.MetadataLookup<SecuredMethod>) SecuredMethodRegistry::resolve);
+            securedMethods.putAll(beanSecuredMethods);
+        }
+    }
+
+    public SecuredMethod get(Method method) {
+        // only methods of beans created after startup end up here
+        return securedMethods.computeIfAbsent(method, SecuredMethodRegistry::resolve);
+    }
+
+    static SecuredMethod resolve(Method method) {
+        RequiresRole requiresRole = AnnotatedElementUtils.findMergedAnnotation(method, RequiresRole.class);
+        if (requiresRole == null) {
+            return null;
+        }
+
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            boolean isCustomerId = Arrays.stream(parameterAnnotations[i])
+                    .anyMatch(annotation -> annotation instanceof CustomerId);
+            if (!isCustomerId) {
+                continue;
+            }
+
+            Class<?> parameterType = ClassUtils.resolvePrimitiveIfNecessary(method.getParameterTypes()[i]);
+            boolean customerOwned = CustomerOwned.class.isAssignableFrom(parameterType);
+            if (!customerOwned && !Number.class.isAssignableFrom(parameterType)) {
+                throw new IllegalStateException("@CustomerId parameter of " + method + " must be a number or CustomerOwned");
+            }
+            return new SecuredMethod(i, customerOwned, Roles.maskOf(Arrays.asList(requiresRole.value())));
+        }
+        throw new IllegalStateException(method + " has @RequiresRole but no @CustomerId parameter");
+    }
+}
@@ -1,217 +1,33 @@
 package com.practice.onlineShop.aspects;
 
-import com.practice.onlineShop.entities.User;
-import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.cache.UserRolesCache;
 import com.practice.onlineShop.exceptions.InvalidCustomerIdException;
 import com.practice.onlineShop.exceptions.InvalidOperationException;
-import com.practice.onlineShop.repositories.UserRepository;
-import com.practice.onlineShop.vos.OrderVO;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.Optional;
-
 @Aspect
 @Component
 @RequiredArgsConstructor
 public class SecurityAspect {
-    private final UserRepository userRepository;
-
-    @Pointcut("execution(* com.practice.onlineShop.services.ProductService.addProduct(..))")
-    public void addProduct() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.ProductService.updateProduct(..))")
-    public void updateProduct() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.ProductService.deleteProduct(..))")
-    public void deleteProduct() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.ProductService.addStock(..))")
-    public void addStock() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.OrderService.addOrder(..))")
-    public void addOrderPointcut() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.OrderService.deliver(..))")
-    public void deliverPointcut() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.OrderService.cancelOrder(..))")
-    public void cancelOrderPointcut() {}
-
-    @Pointcut("execution(* com.practice.onlineShop.services.OrderService.returnOrder(..))")
-    public void returnOrderPointcut() {}
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.addProduct()")
-    public void checkSecurityBeforeAddingProduct(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToAddProduct(user.getRoles())) {
-            throw new InvalidOperationException();
-        }
+    private final UserRolesCache userRolesCache;
+    private final SecuredMethodRegistry securedMethodRegistry;
 
-        System.out.println(customerId);
-    }
+    @Pointcut("@annotation(com.practice.onlineShop.annotations.RequiresRole)")
+    public void securedMethod() {}
 
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.updateProduct()")
-    public void checkSecurityBeforeUpdatingProduct(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
+    @Before("com.practice.onlineShop.aspects.SecurityAspect.securedMethod()")
+    public void checkSecurity(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
+        SecuredMethod securedMethod = securedMethodRegistry.get(((MethodSignature) joinPoint.getSignature()).getMethod());
+        int rolesMask = userRolesCache.getRolesMask(securedMethod.getCustomerId(joinPoint.getArgs()));
 
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToUpdateProduct(user.getRoles())) {
+        if (!securedMethod.isAllowed(rolesMask)) {
             throw new InvalidOperationException();
         }
-
-        System.out.println(customerId);
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.deleteProduct()")
-    public void checkSecurityBeforeDeletingProduct(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToDeleteProduct(user.getRoles())) {
-            throw new InvalidOperationException();
-        }
-
-        System.out.println(customerId);
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.addOrderPointcut()")
-    public void checkSecurityBeforeAddingAnOrder(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        OrderVO orderVO = (OrderVO) joinPoint.getArgs()[0];
-        if (orderVO.getUserId() == null){
-            throw new InvalidCustomerIdException();
-        }
-        Optional<User> userOptional = userRepository.findById(orderVO.getUserId().longValue());
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToAddAnOrder(user.getRoles())) {
-            throw new InvalidOperationException();
-        }
-
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.deliverPointcut()")
-    public void checkSecurityBeforeDeliver(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToDeliver(user.getRoles())) {
-            throw new InvalidOperationException();
-        }
-
-        System.out.println(customerId);
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.cancelOrderPointcut()")
-    public void checkSecurityBeforeCancelingOrder(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if( userIsNotAllowedToCancel(user.getRoles())) {
-            throw new InvalidOperationException();
-        }
-
-        System.out.println(customerId);
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.returnOrderPointcut()")
-    public void checkSecurityBeforeReturningOrder(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[1];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if (userIsNotAllowedToReturnOrder(user.getRoles())){
-            throw new InvalidOperationException();
-        }
-    }
-
-    @Before("com.practice.onlineShop.aspects.SecurityAspect.addStock()")
-    public void checkSecurityBeforeAddingStock(JoinPoint joinPoint) throws InvalidCustomerIdException, InvalidOperationException {
-        Long customerId = (Long) joinPoint.getArgs()[2];
-        Optional<User> userOptional = userRepository.findById(customerId);
-
-        if (!userOptional.isPresent()){
-            throw new InvalidCustomerIdException();
-        }
-        User user = userOptional.get();
-
-        if (userIsNotAllowedToAddStock(user.getRoles())){
-            throw new InvalidOperationException();
-        }
-    }
-
-
-
-    private boolean userIsNotAllowedToReturnOrder(Collection<Roles> roles) {
-        return !roles.contains(Roles.CLIENT);
-    }
-
-    private boolean userIsNotAllowedToCancel(Collection<Roles> roles) {
-        return !roles.contains(Roles.CLIENT);
-    }
-
-    private boolean userIsNotAllowedToDeliver(Collection<Roles> roles) {
-        return !roles.contains(Roles.EXPEDITOR);
-    }
-
-    private boolean userIsNotAllowedToAddAnOrder(Collection<Roles> roles) {
-        return !roles.contains(Roles.CLIENT);
-    }
-
-    private boolean userIsNotAllowedToAddProduct(Collection<Roles> roles) {
-        return !roles.contains((Roles.ADMIN));
-    }
-
-    private boolean userIsNotAllowedToDeleteProduct(Collection<Roles> roles) {
-        return !roles.contains((Roles.ADMIN));
-    }
-
-    private boolean userIsNotAllowedToUpdateProduct(Collection<Roles> roles) {
-        return !roles.contains(Roles.ADMIN) && !roles.contains(Roles.EDITOR);
-    }
-
-    private boolean userIsNotAllowedToAddStock(Collection<Roles> roles) {
-        return !roles.contains(Roles.ADMIN);
     }
 }
@@ -0,0 +1,200 @@
+package com.practice.onlineShop.cache;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded, TTL-evicting map behind the caches of this package. Keys are spread over segments, each an
+ * access-ordered map with its own lock that evicts its least recently used entry when full, so lookups of different
+ * keys rarely wait for each other. A value loaded outside the lock is stored through a {@link Load} that
+ * {@link #invalidate(Object)} marks stale, so invalidating a key only keeps loads of that same key from being cached.
+ */
+public class ExpiringLruCache<K, V> {
+    private static final int MIN_SEGMENT_SIZE = 1024;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final AtomicLong evictions = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public ExpiringLruCache(int maxSize, long ttlSeconds) {
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+        int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentSize, evictions);
+        }
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Returns the value of {@code key}, or null if it isn't cached or has expired.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            return segment.getLive(key, System.nanoTime());
+        }
+    }
+
+    /**
+     * Stores {@code value} unless {@code key} already has a live value, and returns the value the key ends up with.
+     */
+    public V putIfAbsent(K key, V value) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            long now = System.nanoTime();
+            V current = segment.getLive(key, now);
+            if (current != null) {
+                return current;
+            }
+            segment.entries.put(key, new Entry<>(value, now + ttlNanos));
+            return value;
+        }
+    }
+
+    /**
+     * Starts loading {@code key} outside the cache. Every load has to be ended with {@link #finishLoad(Load, Object)},
+     * also when it fails.
+     */
+    public Load<K> startLoad(K key) {
+        Load<K> load = new Load<>(key);
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.loads.computeIfAbsent(key, k -> new ArrayList<>(1)).add(load);
+        }
+        return load;
+    }
+
+    /**
+     * Ends {@code load}, caching {@code value} if it isn't null and the key wasn't invalidated since the load started,
+     * since the load may then have read the old value.
+     */
+    public void finishLoad(Load<K> load, V value) {
+        Segment<K, V> segment = segmentOf(load.key);
+        synchronized (segment) {
+            List<Load<K>> loads = segment.loads.get(load.key);
+            if (loads == null || !loads.remove(load)) {
+                return;
+            }
+            if (loads.isEmpty()) {
+                segment.loads.remove(load.key);
+            }
+            if (value != null && !load.stale) {
+                segment.entries.put(load.key, new Entry<>(value, System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.entries.remove(key);
+            List<Load<K>> loads = segment.loads.get(key);
+            if (loads != null) {
+                loads.forEach(load -> load.stale = true);
+            }
+        }
+    }
+
+    /**
+     * Removes {@code key} only while it still maps to {@code value}.
+     */
+    public boolean remove(K key, V value) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry == null || entry.value != value) {
+                return false;
+            }
+            segment.entries.remove(key);
+            return true;
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.loads.values().forEach(loads -> loads.forEach(load -> load.stale = true));
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Number of entries dropped because their segment was full or they had expired.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private Segment<K, V> segmentOf(K key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    public static final class Load<K> {
+        private final K key;
+        // guarded by the segment of the key
+        private boolean stale;
+
+        private Load(K key) {
+            this.key = key;
+        }
+    }
+
+    private static class Segment<K, V> {
+        private final Map<K, Entry<V>> entries;
+        private final Map<K, List<Load<K>>> loads = new HashMap<>();
+        private final AtomicLong evictions;
+
+        private Segment(int maxSize, AtomicLong evictions) {
+            this.evictions = evictions;
+            this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > maxSize) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private V getLive(K key, long now) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt - now > 0) {
+                return entry.value;
+            }
+            entries.remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.exceptions.IdempotencyKeyInProgressException;
+import com.practice.onlineShop.exceptions.IdempotencyKeyReusedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.*;
+
+/**
+ * Size-bounded, expiring store of the outcome of requests sent with an idempotency key. The first request with a key
+ * runs the call; repeated and concurrent requests with the same key wait for that outcome and get the same result or
+ * the same checked exception, waiting at most {@code idempotency.keys.wait-ms}. Unchecked exceptions aren't remembered,
+ * so the request can be retried. Only a SHA-256 digest of the request is kept to recognise it.
+ */
+@Component
+public class IdempotencyKeyStore {
+    private final long waitMillis;
+    private final ExpiringLruCache<String, Entry> entries;
+
+    public IdempotencyKeyStore(@Value("${idempotency.keys.max-size:100000}") int maxSize,
+                               @Value("${idempotency.keys.ttl-seconds:86400}") long ttlSeconds,
+                               @Value("${idempotency.keys.wait-ms:30000}") long waitMillis) {
+        this.waitMillis = waitMillis;
+        this.entries = new ExpiringLruCache<>(maxSize, ttlSeconds);
+    }
+
+    /**
+     * Runs {@code call} once per {@code key}. {@code request} describes the request the key was first used for;
+     * reusing the key for a different request throws {@link IdempotencyKeyReusedException}, and a duplicate that
+     * waited too long for the first request throws {@link IdempotencyKeyInProgressException}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T execute(String key, String request, ThrowingCallable<T, E> call)
+            throws E, IdempotencyKeyReusedException, IdempotencyKeyInProgressException {
+        byte[] fingerprint = digest(request);
+        Entry newEntry = new Entry(fingerprint);
+        Entry entry = entries.putIfAbsent(key, newEntry);
+        boolean firstRequest = entry == newEntry;
+        if (!MessageDigest.isEqual(entry.fingerprint, fingerprint)) {
+            throw new IdempotencyKeyReusedException();
+        }
+        if (firstRequest) {
+            return run(key, entry, call);
+        }
+
+        try {
+            return (T) entry.outcome.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            // only the call of the first request with the same key and request completes the outcome
+            throw (E) cause;
+        } catch (TimeoutException exception) {
+            throw new IdempotencyKeyInProgressException();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private <T, E extends Exception> T run(String key, Entry entry, ThrowingCallable<T, E> call) throws E {
+        try {
+            T result = call.call();
+            entry.outcome.complete(result);
+            return result;
+        } catch (RuntimeException | Error exception) {
+            entries.remove(key, entry);
+            entry.outcome.completeExceptionally(exception);
+            throw exception;
+        } catch (Exception exception) {
+            entry.outcome.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    private static byte[] digest(String request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(String.valueOf(request).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static class Entry {
+        private final byte[] fingerprint;
+        private final CompletableFuture<Object> outcome = new CompletableFuture<>();
+
+        private Entry(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.vos.ProductCacheStatsVO;
+import com.practice.onlineShop.vos.ProductVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Size-bounded, TTL-evicting cache of products by code. A missing product is cached as an empty Optional,
+ * so repeated lookups of unknown codes don't reach the database either.
+ */
+@Component
+public class ProductCache {
+    private final int maxSize;
+    private final ExpiringLruCache<String, Optional<ProductVO>> products;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ProductCache(@Value("${product.cache.max-size:10000}") int maxSize,
+                        @Value("${product.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.products = new ExpiringLruCache<>(maxSize, ttlSeconds);
+    }
+
+    public Optional<ProductVO> get(String productCode, Function<String, Optional<ProductVO>> loader) {
+        Optional<ProductVO> product = products.get(productCode);
+        if (product != null) {
+            hits.incrementAndGet();
+            return product;
+        }
+        misses.incrementAndGet();
+
+        // a load that overlaps an invalidation of the same code may have read the old row, so it isn't cached
+        ExpiringLruCache.Load<String> load = products.startLoad(productCode);
+        try {
+            product = loader.apply(productCode);
+        } finally {
+            products.finishLoad(load, product);
+        }
+        return product;
+    }
+
+    public void invalidate(String productCode) {
+        evict(productCode);
+        // readers may still see the old row until the surrounding transaction commits
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(productCode);
+                }
+            });
+        }
+        invalidations.incrementAndGet();
+    }
+
+    private void evict(String productCode) {
+        products.invalidate(productCode);
+    }
+
+    public void clear() {
+        products.clear();
+    }
+
+    public ProductCacheStatsVO getStats() {
+        ProductCacheStatsVO stats = new ProductCacheStatsVO();
+        stats.setSize(products.size());
+        stats.setMaxSize(maxSize);
+        stats.setHits(hits.get());
+        stats.setMisses(misses.get());
+        stats.setEvictions(products.getEvictions());
+        stats.setInvalidations(invalidations.get());
+        return stats;
+    }
+}
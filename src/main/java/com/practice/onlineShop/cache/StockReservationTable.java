@@ -0,0 +1,170 @@
+package com.practice.onlineShop.cache;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory table of the stock held in shopping carts. Every cart line is a {@link Reservation} that expires
+ * {@code cart.reservation.ttl-seconds} after it was last changed; the expiries are kept on a {@link TimerWheel}.
+ * The quantity reserved per product is kept up to date on every change, so the stock available to sell is
+ * {@code stock - getReserved(productId)} without looking at the carts.
+ * A cart being checked out is detached from the table but its quantities stay reserved until the order is settled.
+ */
+@Component
+public class StockReservationTable {
+    private final long ttlNanos;
+    private final TimerWheel<Reservation> expiries;
+    private final Map<Long, Map<Long, Reservation>> carts = new HashMap<>();
+    private final Map<Long, AtomicInteger> reservedByProductId = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StockReservationTable(@Value("${cart.reservation.ttl-seconds:900}") long ttlSeconds,
+                                 @Value("${cart.timer-wheel.slots:1024}") int slotCount,
+                                 @Value("${cart.timer-wheel.tick-millis:1000}") long tickMillis) {
+        this(ttlSeconds, slotCount, tickMillis, System.nanoTime());
+    }
+
+    public StockReservationTable(long ttlSeconds, int slotCount, long tickMillis, long originNanos) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.expiries = new TimerWheel<>(slotCount, TimeUnit.MILLISECONDS.toNanos(tickMillis), originNanos);
+    }
+
+    public int getReserved(long productId) {
+        AtomicInteger reserved = reservedByProductId.get(productId);
+        return reserved == null ? 0 : reserved.get();
+    }
+
+    public synchronized int getQuantity(long userId, long productId) {
+        Reservation reservation = carts.getOrDefault(userId, Collections.emptyMap()).get(productId);
+        return reservation == null ? 0 : reservation.quantity;
+    }
+
+    public synchronized List<Reservation> getCart(long userId) {
+        return new ArrayList<>(carts.getOrDefault(userId, Collections.emptyMap()).values());
+    }
+
+    /**
+     * Sets the quantity of a product in the cart of a user and restarts the expiry of that line. The caller has checked
+     * that the stock is available and holds the lock of the product until the reservation is in place.
+     */
+    public synchronized Reservation put(long userId, long productId, String productCode, int quantity, long nowNanos) {
+        Reservation reservation = new Reservation(userId, productId, productCode, quantity, nowNanos + ttlNanos,
+                System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+        Reservation previous = carts.computeIfAbsent(userId, id -> new LinkedHashMap<>()).put(productId, reservation);
+        addReserved(productId, quantity - (previous == null ? 0 : previous.quantity));
+        expiries.schedule(reservation, reservation.deadlineNanos);
+        return reservation;
+    }
+
+    public synchronized Reservation remove(long userId, long productId) {
+        Map<Long, Reservation> cart = carts.get(userId);
+        Reservation reservation = cart == null ? null : cart.remove(productId);
+        if (reservation != null) {
+            removeCartIfEmpty(userId, cart);
+            addReserved(productId, -reservation.quantity);
+        }
+        return reservation;
+    }
+
+    public synchronized List<Reservation> removeAll(long userId) {
+        List<Reservation> reservations = detach(userId);
+        settle(reservations);
+        return reservations;
+    }
+
+    /**
+     * Takes the cart of a user out of the table for checkout, leaving its quantities reserved.
+     */
+    public synchronized List<Reservation> detach(long userId) {
+        Map<Long, Reservation> cart = carts.remove(userId);
+        return cart == null ? new ArrayList<>() : new ArrayList<>(cart.values());
+    }
+
+    /**
+     * Releases the quantities of detached reservations, once their order holds the stock or they were dropped.
+     */
+    public synchronized void settle(Collection<Reservation> reservations) {
+        reservations.forEach(reservation -> addReserved(reservation.productId, -reservation.quantity));
+    }
+
+    /**
+     * Puts back a cart whose checkout failed. Lines that expired in the meantime, or that the user set again during
+     * the checkout, are released and returned.
+     */
+    public synchronized List<Reservation> restore(Collection<Reservation> reservations, long nowNanos) {
+        List<Reservation> released = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            Map<Long, Reservation> cart = carts.computeIfAbsent(reservation.userId, id -> new LinkedHashMap<>());
+            if (reservation.deadlineNanos - nowNanos <= 0 || cart.containsKey(reservation.productId)) {
+                addReserved(reservation.productId, -reservation.quantity);
+                released.add(reservation);
+            } else {
+                cart.put(reservation.productId, reservation);
+                // its first expiry may have come up while it was detached, a second one is ignored if it wasn't
+                expiries.schedule(reservation, reservation.deadlineNanos);
+            }
+            removeCartIfEmpty(reservation.userId, cart);
+        }
+        return released;
+    }
+
+    /**
+     * Releases the reservations whose time is up and returns them.
+     */
+    public synchronized List<Reservation> expire(long nowNanos) {
+        List<Reservation> expired = new ArrayList<>();
+        for (Reservation reservation : expiries.advance(nowNanos)) {
+            Map<Long, Reservation> cart = carts.get(reservation.userId);
+            // lines that were changed, removed or checked out since are no longer the ones in the cart
+            if (cart != null && cart.get(reservation.productId) == reservation) {
+                cart.remove(reservation.productId);
+                removeCartIfEmpty(reservation.userId, cart);
+                addReserved(reservation.productId, -reservation.quantity);
+                expired.add(reservation);
+            }
+        }
+        return expired;
+    }
+
+    private void addReserved(long productId, int quantity) {
+        if (quantity == 0) {
+            return;
+        }
+        int reserved = reservedByProductId.computeIfAbsent(productId, id -> new AtomicInteger()).addAndGet(quantity);
+        if (reserved == 0) {
+            reservedByProductId.remove(productId);
+        }
+    }
+
+    private void removeCartIfEmpty(long userId, Map<Long, Reservation> cart) {
+        if (cart.isEmpty()) {
+            carts.remove(userId);
+        }
+    }
+
+    @Getter
+    public static class Reservation {
+        private final long userId;
+        private final long productId;
+        private final String productCode;
+        private final int quantity;
+        private final long deadlineNanos;
+        private final long expiresAt;
+
+        private Reservation(long userId, long productId, String productCode, int quantity, long deadlineNanos, long expiresAt) {
+            this.userId = userId;
+            this.productId = productId;
+            this.productCode = productCode;
+            this.quantity = quantity;
+            this.deadlineNanos = deadlineNanos;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.practice.onlineShop.cache;
+
+/**
+ * A {@link java.util.concurrent.Callable} that declares the checked exception it throws, so callers of
+ * {@link IdempotencyKeyStore#execute(String, String, ThrowingCallable)} only have to handle that one.
+ */
+@FunctionalInterface
+public interface ThrowingCallable<T, E extends Exception> {
+    T call() throws E;
+}
@@ -0,0 +1,84 @@
+package com.practice.onlineShop.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: every deadline falls into one of {@code slotCount} slots of {@code tickNanos} each, so adding an
+ * entry and finding the expired ones cost O(1) per entry, with no sorted queue and no scheduled task per entry.
+ * Deadlines more than one turn away stay in their slot until the wheel comes round to their tick.
+ * Entries are never removed before their deadline; callers check whether an expired entry still matters.
+ */
+public class TimerWheel<T> {
+    private final long tickNanos;
+    private final long originNanos;
+    private final List<List<Entry<T>>> slots;
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(int slotCount, long tickNanos, long originNanos) {
+        if (slotCount <= 0 || tickNanos <= 0) {
+            throw new IllegalArgumentException("The timer wheel needs at least one slot and a positive tick");
+        }
+        this.tickNanos = tickNanos;
+        this.originNanos = originNanos;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    public synchronized void schedule(T item, long deadlineNanos) {
+        // rounded up, so an entry never comes out before its deadline
+        long tick = Math.max(currentTick + 1, ceilDiv(deadlineNanos - originNanos, tickNanos));
+        slots.get(slotOf(tick)).add(new Entry<>(item, tick));
+        size++;
+    }
+
+    /**
+     * Moves the wheel up to {@code nowNanos} and returns the entries whose deadline has passed, earliest tick first.
+     */
+    public synchronized List<T> advance(long nowNanos) {
+        List<T> expired = new ArrayList<>();
+        long nowTick = Math.floorDiv(nowNanos - originNanos, tickNanos);
+        // a sweeper that fell behind by more than a turn only has to look at every slot once
+        long lastTick = Math.min(nowTick, currentTick + slots.size());
+        while (currentTick < lastTick) {
+            currentTick++;
+            Iterator<Entry<T>> entries = slots.get(slotOf(currentTick)).iterator();
+            while (entries.hasNext()) {
+                Entry<T> entry = entries.next();
+                if (entry.tick <= nowTick) {
+                    expired.add(entry.item);
+                    entries.remove();
+                    size--;
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.size());
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long tick;
+
+        private Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
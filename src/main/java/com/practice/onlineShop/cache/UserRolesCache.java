@@ -0,0 +1,96 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.exceptions.InvalidCustomerIdException;
+import com.practice.onlineShop.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Size-bounded cache of the roles of each user, stored as a {@link Roles#mask()} bitmask. Anything that changes
+ * the roles of a user has to call {@link #invalidate(long)}.
+ */
+@Component
+public class UserRolesCache {
+    private final UserRepository userRepository;
+    private final ExpiringLruCache<Long, Integer> rolesMasks;
+
+    public UserRolesCache(UserRepository userRepository,
+                          @Value("${user.roles.cache.max-size:10000}") int maxSize,
+                          @Value("${user.roles.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.rolesMasks = new ExpiringLruCache<>(maxSize, ttlSeconds);
+    }
+
+    public int getRolesMask(Long userId) throws InvalidCustomerIdException {
+        if (userId == null) {
+            throw new InvalidCustomerIdException();
+        }
+        Integer rolesMask = rolesMasks.get(userId);
+        if (rolesMask != null) {
+            return rolesMask;
+        }
+
+        ExpiringLruCache.Load<Long> load = rolesMasks.startLoad(userId);
+        try {
+            rolesMask = loadRolesMask(userId);
+        } finally {
+            rolesMasks.finishLoad(load, rolesMask);
+        }
+        return rolesMask;
+    }
+
+    /**
+     * Returns the roles mask of every user in {@code userIds} that exists, loading all the missing ones with a single
+     * query. Unknown users are left out of the result.
+     */
+    public Map<Long, Integer> getRolesMasks(Collection<Long> userIds) {
+        Map<Long, Integer> result = new HashMap<>();
+        List<ExpiringLruCache.Load<Long>> loads = new ArrayList<>();
+        List<Long> missingUserIds = new ArrayList<>();
+        for (Long userId : userIds) {
+            Integer rolesMask = rolesMasks.get(userId);
+            if (rolesMask != null) {
+                result.put(userId, rolesMask);
+            } else {
+                loads.add(rolesMasks.startLoad(userId));
+                missingUserIds.add(userId);
+            }
+        }
+        if (missingUserIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Integer> loadedRolesMasks = new HashMap<>();
+        try {
+            for (Object[] userIdAndRole : userRepository.findIdsAndRolesByIds(missingUserIds)) {
+                Roles role = (Roles) userIdAndRole[1];
+                loadedRolesMasks.merge((Long) userIdAndRole[0], role == null ? 0 : role.mask(), (first, second) -> first | second);
+            }
+        } finally {
+            for (int i = 0; i < loads.size(); i++) {
+                rolesMasks.finishLoad(loads.get(i), loadedRolesMasks.get(missingUserIds.get(i)));
+            }
+        }
+        result.putAll(loadedRolesMasks);
+        return result;
+    }
+
+    public void invalidate(long userId) {
+        rolesMasks.invalidate(userId);
+    }
+
+    public void clear() {
+        rolesMasks.clear();
+    }
+
+    private int loadRolesMask(long userId) throws InvalidCustomerIdException {
+        List<Roles> roles = userRepository.findRolesById(userId);
+        if (roles.isEmpty() && !userRepository.existsById(userId)) {
+            throw new InvalidCustomerIdException();
+        }
+        return Roles.maskOf(roles);
+    }
+}
@@ -0,0 +1,40 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.exceptions.*;
+import com.practice.onlineShop.services.CartService;
+import com.practice.onlineShop.vos.CartItemVO;
+import com.practice.onlineShop.vos.CartVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/cart")
+@RequiredArgsConstructor
+public class CartController {
+    private final CartService cartService;
+
+    @GetMapping("/{userId}")
+    public CartVO getCart(@PathVariable Long userId) {
+        return cartService.getCart(userId);
+    }
+
+    @PutMapping("/{userId}")
+    public CartVO setItem(@PathVariable Long userId, @RequestBody CartItemVO cartItemVO) throws InvalidProductsException, InvalidProductIdException, NotEnoughStockException, ProductOnFlashSaleException {
+        return cartService.setItem(userId, cartItemVO);
+    }
+
+    @DeleteMapping("/{userId}/{productId}")
+    public CartVO removeItem(@PathVariable Long userId, @PathVariable Long productId) {
+        return cartService.removeItem(userId, productId);
+    }
+
+    @DeleteMapping("/{userId}")
+    public void clearCart(@PathVariable Long userId) {
+        cartService.clearCart(userId);
+    }
+
+    @PostMapping("/{userId}/checkout")
+    public long checkout(@PathVariable Long userId) throws InvalidProductsException, InvalidProductIdException, NotEnoughStockException {
+        return cartService.checkout(userId);
+    }
+}
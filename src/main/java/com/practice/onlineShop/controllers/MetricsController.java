@@ -0,0 +1,18 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.metrics.MetricsRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+    private final MetricsRegistry metricsRegistry;
+
+    @GetMapping(value = "/metrics", produces = MediaType.TEXT_PLAIN_VALUE)
+    public String getMetrics() {
+        return metricsRegistry.scrape();
+    }
+}
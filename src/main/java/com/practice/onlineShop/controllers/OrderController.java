@@ -1,20 +1,83 @@
 package com.practice.onlineShop.controllers;
 
+import com.practice.onlineShop.cache.IdempotencyKeyStore;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
 import com.practice.onlineShop.exceptions.*;
+import com.practice.onlineShop.services.OrderIntakeService;
 import com.practice.onlineShop.services.OrderService;
+import com.practice.onlineShop.vos.BulkDeliveryResultVO;
+import com.practice.onlineShop.vos.OrderHistoryVO;
+import com.practice.onlineShop.vos.OrderIntakeStatsVO;
+import com.practice.onlineShop.vos.OrderResultVO;
+import com.practice.onlineShop.vos.OrderSummaryVO;
+import com.practice.onlineShop.vos.OrderTokenVO;
 import com.practice.onlineShop.vos.OrderVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.springframework.http.ResponseEntity.ok;
+import static org.springframework.http.ResponseEntity.status;
+
 @RestController
 @RequestMapping("/order")
 @RequiredArgsConstructor
 public class OrderController {
-    private OrderService orderService;
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final OrderService orderService;
+    private final OrderIntakeService orderIntakeService;
+    private final IdempotencyKeyStore idempotencyKeyStore;
 
     @PostMapping
-    public void addOrder(@RequestBody OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException, NotEnoughStockException {
-        orderService.addOrder(orderVO);
+    public ResponseEntity<OrderTokenVO> addOrder(@RequestBody OrderVO orderVO,
+                                                 @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
+            throws Exception {
+        if (idempotencyKey == null || orderVO == null) {
+            return placeOrder(orderVO);
+        }
+        return idempotencyKeyStore.execute(orderVO.getUserId() + ":" + idempotencyKey, describe(orderVO),
+                () -> placeOrder(orderVO));
+    }
+
+    @GetMapping("/user/{userId}")
+    public OrderHistoryVO[] getOrders(@PathVariable Long userId,
+                                      @RequestParam(required = false) Long after,
+                                      @RequestParam(required = false) Integer limit,
+                                      @RequestParam(required = false) OrderStatus status) {
+        return orderService.getOrders(userId, after, limit, status).toArray(new OrderHistoryVO[]{});
+    }
+
+    @GetMapping("/summary/{orderId}/{customerId}")
+    public OrderSummaryVO getOrderSummary(@PathVariable Integer orderId, @PathVariable Long customerId) throws InvalidOrderIdException {
+        return orderService.getOrderSummary(orderId, customerId);
+    }
+
+    @GetMapping("/revenue/{customerId}")
+    public Map<Currencies, Double> getRevenue(@PathVariable Long customerId) {
+        return orderService.getRevenue(customerId);
+    }
+
+    @GetMapping("/status/{token}")
+    public OrderTokenVO getOrderStatus(@PathVariable String token) throws InvalidOrderTokenException {
+        return orderIntakeService.getStatus(token);
+    }
+
+    @GetMapping("/intake/stats")
+    public OrderIntakeStatsVO getIntakeStats() {
+        return orderIntakeService.getStats();
+    }
+
+    @PostMapping("/batch")
+    public List<OrderResultVO> addOrders(@RequestBody List<OrderVO> orderVOs) throws OrderBatchTooLargeException {
+        return orderService.addOrders(orderVOs);
     }
 
     @PatchMapping("/{orderId}/{customerId}")
@@ -22,6 +85,11 @@ public class OrderController {
         orderService.deliver(orderId, customerId);
     }
 
+    @PatchMapping("/deliver/{customerId}")
+    public BulkDeliveryResultVO deliverOrders(@RequestBody List<Long> orderIds, @PathVariable Long customerId) throws OrderBatchTooLargeException {
+        return orderService.deliverOrders(orderIds, customerId);
+    }
+
     @PatchMapping("/cancel/{orderId}/{customerId}")
     public void cancelOrder(@PathVariable Integer orderId, @PathVariable Long customerId) throws OrderAlreadyDeliveredException, InvalidOrderIdException {
         orderService.cancelOrder(orderId, customerId);
@@ -31,4 +99,25 @@ public class OrderController {
     public void returnOrder(@PathVariable Integer orderId, @PathVariable Long customerId) throws InvalidOrderIdException, OrderNotDeliveredYetException, OrderCanceledException {
         orderService.returnOrder(orderId, customerId);
     }
+
+    /**
+     * Describes the order independently of the order of its products, for the idempotency key store to recognise it.
+     */
+    private static String describe(OrderVO orderVO) {
+        StringBuilder description = new StringBuilder().append(orderVO.getUserId());
+        if (orderVO.getProductsIdsToQuantity() != null) {
+            Map<Integer, Integer> productsIdsToQuantity = new TreeMap<>(Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+            productsIdsToQuantity.putAll(orderVO.getProductsIdsToQuantity());
+            description.append(':').append(productsIdsToQuantity);
+        }
+        return description.toString();
+    }
+
+    private ResponseEntity<OrderTokenVO> placeOrder(OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException, NotEnoughStockException, OrderQueueFullException, FlashSaleUnavailableException {
+        if (orderIntakeService.isEnabled()) {
+            return status(HttpStatus.ACCEPTED).body(orderIntakeService.submit(orderVO));
+        }
+        orderService.addOrder(orderVO);
+        return ok().build();
+    }
 }
@@ -1,16 +1,39 @@
 package com.practice.onlineShop.controllers;
 
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.exceptions.ConcurrentUpdateException;
+import com.practice.onlineShop.exceptions.InvalidImportFileException;
 import com.practice.onlineShop.exceptions.InvalidProductCodeException;
+import com.practice.onlineShop.exceptions.InvalidStockShardsException;
+import com.practice.onlineShop.exceptions.ReconciliationInProgressException;
+import com.practice.onlineShop.exceptions.StockReservedException;
+import com.practice.onlineShop.services.FlashSaleService;
+import com.practice.onlineShop.services.ProductImportService;
 import com.practice.onlineShop.services.ProductService;
+import com.practice.onlineShop.services.StockReconciliationService;
+import com.practice.onlineShop.vos.FlashSaleStatsVO;
+import com.practice.onlineShop.vos.ProductCacheStatsVO;
+import com.practice.onlineShop.vos.ProductImportReportVO;
 import com.practice.onlineShop.vos.ProductVO;
+import com.practice.onlineShop.vos.StockJournalStatsVO;
+import com.practice.onlineShop.vos.StockReconciliationReportVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+
 @RestController
 @RequestMapping("/product")
 @RequiredArgsConstructor
 public class ProductController {
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final FlashSaleService flashSaleService;
+    private final StockReconciliationService stockReconciliationService;
 
     @PostMapping("/{customerId}")
     public void addProduct(@RequestBody ProductVO productVO, @PathVariable Long customerId) {
@@ -18,18 +41,76 @@ public class ProductController {
         productService.addProduct(productVO, customerId);
     }
 
+    @PostMapping(value = "/bulk/{customerId}", consumes = {MediaType.APPLICATION_JSON_VALUE, ProductImportService.TEXT_CSV_VALUE})
+    public ProductImportReportVO importProducts(InputStream inputStream, @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                @PathVariable Long customerId) throws InvalidImportFileException {
+        return productImportService.importProducts(inputStream, contentType, customerId);
+    }
+
     @GetMapping("/{productCode}")
     public ProductVO getProduct(@PathVariable String productCode) throws InvalidProductCodeException {
         return productService.getProduct(productCode);
     }
 
     @GetMapping
-    public ProductVO[] getProducts(){
-        return productService.getProducts().toArray(new ProductVO[]{});
+    public ProductVO[] getProducts(@RequestParam(required = false) Long after,
+                                   @RequestParam(required = false) Integer limit,
+                                   @RequestParam(required = false) Boolean valid,
+                                   @RequestParam(required = false) Currencies currency,
+                                   @RequestParam(required = false) Double minPrice,
+                                   @RequestParam(required = false) Double maxPrice){
+        return productService.getProducts(after, limit, valid, currency, minPrice, maxPrice).toArray(new ProductVO[]{});
+    }
+
+    @GetMapping("/export")
+    public void exportProducts(HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        productService.exportProducts(response.getOutputStream());
+    }
+
+    @GetMapping("/cache/stats")
+    public ProductCacheStatsVO getProductCacheStats() {
+        return productService.getProductCacheStats();
+    }
+
+    @GetMapping("/flash-sale/stats")
+    public FlashSaleStatsVO[] getFlashSaleStats() {
+        return flashSaleService.getStats().toArray(new FlashSaleStatsVO[]{});
+    }
+
+    @GetMapping("/stock-journal/stats")
+    public StockJournalStatsVO getStockJournalStats() {
+        return productService.getStockJournalStats();
+    }
+
+    @PostMapping("/stock-journal/snapshot/{customerId}")
+    public void snapshotStockJournal(@PathVariable Long customerId) throws IOException {
+        productService.snapshotStockJournal(customerId);
+    }
+
+    @PostMapping("/stock-journal/rebuild/{customerId}")
+    public int rebuildStockFromJournal(@PathVariable Long customerId) {
+        return productService.rebuildStockFromJournal(customerId);
+    }
+
+    @PostMapping("/stock-reconciliation/{customerId}")
+    public StockReconciliationReportVO reconcileStock(@PathVariable Long customerId,
+                                                      @RequestParam(defaultValue = "false") boolean autoCorrect) throws ReconciliationInProgressException {
+        return stockReconciliationService.reconcile(autoCorrect, customerId);
+    }
+
+    @PostMapping("/{productCode}/flash-sale/{customerId}")
+    public void startFlashSale(@PathVariable String productCode, @PathVariable Long customerId) throws InvalidProductCodeException, StockReservedException {
+        flashSaleService.startFlashSale(productCode, customerId);
+    }
+
+    @DeleteMapping("/{productCode}/flash-sale/{customerId}")
+    public void stopFlashSale(@PathVariable String productCode, @PathVariable Long customerId) throws InvalidProductCodeException, InterruptedException {
+        flashSaleService.stopFlashSale(productCode, customerId);
     }
 
     @PutMapping("/{customerId}")
-    public void updateProduct(@RequestBody ProductVO productVO, @PathVariable Long customerId) throws InvalidProductCodeException {
+    public void updateProduct(@RequestBody ProductVO productVO, @PathVariable Long customerId) throws InvalidProductCodeException, ConcurrentUpdateException {
         productService.updateProduct(productVO, customerId);
     }
 
@@ -38,6 +119,11 @@ public class ProductController {
         productService.deleteProduct(productCode, customerId);
     }
 
+    @PatchMapping("/{productCode}/shards/{stockShards}/{customerId}")
+    public void shardStock(@PathVariable String productCode, @PathVariable Integer stockShards, @PathVariable Long customerId) throws InvalidProductCodeException, InvalidStockShardsException, ConcurrentUpdateException {
+        productService.shardStock(productCode, stockShards, customerId);
+    }
+
     @PatchMapping("/{productCode}/{quantity}/{customerId}")
     public void addStock(@PathVariable String productCode, @PathVariable Integer quantity, @PathVariable Long customerId) throws InvalidProductCodeException {
         productService.addStock(productCode, quantity, customerId);
@@ -1,5 +1,6 @@
 package com.practice.onlineShop.entities;
 
+import com.practice.onlineShop.enums.Currencies;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -11,11 +12,15 @@ import javax.persistence.*;
 public class OrderItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_item_seq")
+    @SequenceGenerator(name = "order_item_seq", sequenceName = "order_item_seq", allocationSize = 50)
     private long id;
 
     @OneToOne
     private Product product;
     private int quantity;
+    private double unitPrice;
+    @Enumerated(EnumType.STRING)
+    private Currencies currency;
 
 }
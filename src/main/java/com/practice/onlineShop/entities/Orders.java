@@ -1,5 +1,7 @@
 package com.practice.onlineShop.entities;
 
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -9,24 +11,65 @@ import java.util.List;
 @Entity
 @Getter
 @Setter
+@Table(indexes = {
+        @Index(name = "idx_orders_status", columnList = "status"),
+        @Index(name = "idx_orders_user_id_id", columnList = "user_id, id")
+})
 public class Orders {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private long id;
 
     @OneToMany(cascade = CascadeType.ALL)
-    @JoinColumn(name = "order_id")
+    @JoinColumn(name = "order_id", nullable = false, updatable = false)
     private List<OrderItem> orderItems;
     @OneToOne
     @JoinColumn(name = "user_id")
     private User user;
 
-    private boolean isDelivered;
-    private boolean isReturned;
-    private boolean isCanceled;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OrderStatus status = OrderStatus.PLACED;
 
+    private double totalEur;
+    private double totalUsd;
+    private double totalRon;
 
+    public double getTotal(Currencies currency) {
+        switch (requireCurrency(currency)) {
+            case EUR:
+                return totalEur;
+            case USD:
+                return totalUsd;
+            case RON:
+                return totalRon;
+            default:
+                throw new IllegalArgumentException("Unsupported currency " + currency);
+        }
+    }
 
+    public void addToTotal(Currencies currency, double amount) {
+        switch (requireCurrency(currency)) {
+            case EUR:
+                totalEur += amount;
+                break;
+            case USD:
+                totalUsd += amount;
+                break;
+            case RON:
+                totalRon += amount;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported currency " + currency);
+        }
+    }
 
+    private static Currencies requireCurrency(Currencies currency) {
+        if (currency == null) {
+            throw new IllegalArgumentException("An order total needs a currency");
+        }
+        return currency;
+    }
 }
@@ -9,10 +9,15 @@ import javax.persistence.*;
 @Entity
 @Setter
 @Getter
-
+@Table(indexes = {
+        @Index(name = "idx_product_valid_id", columnList = "valid, id"),
+        @Index(name = "idx_product_currency_id", columnList = "currency, id"),
+        @Index(name = "idx_product_price", columnList = "price")
+})
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private long id;
     @Column(unique = true)
     private String code;
@@ -22,5 +27,15 @@ public class Product {
     private boolean valid;
     @Enumerated(EnumType.STRING)
     private Currencies currency;
+    @Version
+    private long version;
+    /**
+     * Number of {@link StockShard}s the stock is split into; {@code 0} when the stock is kept in {@link #stock}.
+     */
+    private int stockShards;
+
+    public boolean hasShardedStock() {
+        return stockShards > 0;
+    }
 
 }
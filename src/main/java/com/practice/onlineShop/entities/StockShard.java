@@ -0,0 +1,33 @@
+package com.practice.onlineShop.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import javax.persistence.*;
+
+/**
+ * One of the sub-counters the stock of a product is split into when the product has sharded stock.
+ */
+@Entity
+@Getter
+@Setter
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stock_shard_product_index", columnNames = {"product_id", "shard_index"}))
+public class StockShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_shard_seq")
+    @SequenceGenerator(name = "stock_shard_seq", sequenceName = "stock_shard_seq", allocationSize = 50)
+    private long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Product product;
+
+    @Column(name = "shard_index")
+    private int shardIndex;
+
+    private int stock;
+}
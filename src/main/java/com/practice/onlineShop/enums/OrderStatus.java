@@ -0,0 +1,36 @@
+package com.practice.onlineShop.enums;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public enum OrderStatus {
+    PLACED,
+    DELIVERED,
+    CANCELED,
+    RETURNED;
+
+    private static final Map<OrderStatus, Set<OrderStatus>> ALLOWED_SOURCES = new EnumMap<>(OrderStatus.class);
+
+    static {
+        ALLOWED_SOURCES.put(PLACED, EnumSet.noneOf(OrderStatus.class));
+        ALLOWED_SOURCES.put(DELIVERED, EnumSet.of(PLACED));
+        ALLOWED_SOURCES.put(CANCELED, EnumSet.of(PLACED));
+        ALLOWED_SOURCES.put(RETURNED, EnumSet.of(DELIVERED));
+    }
+
+    /**
+     * The statuses of the orders that keep the stock they took; canceled and returned orders give it back.
+     */
+    public static Set<OrderStatus> getStockHoldingStatuses() {
+        return EnumSet.of(PLACED, DELIVERED);
+    }
+
+    /**
+     * The statuses an order can move to this status from.
+     */
+    public Set<OrderStatus> getAllowedSources() {
+        return ALLOWED_SOURCES.get(this);
+    }
+}
@@ -1,8 +1,22 @@
 package com.practice.onlineShop.enums;
 
+import java.util.Collection;
+
 public enum Roles {
     ADMIN,
     EDITOR,
     EXPEDITOR,
-    CLIENT
+    CLIENT;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public static int maskOf(Collection<Roles> roles) {
+        int mask = 0;
+        for (Roles role : roles) {
+            mask |= role.mask();
+        }
+        return mask;
+    }
 }
@@ -0,0 +1,33 @@
+package com.practice.onlineShop.enums;
+
+/**
+ * Why the stock of a product changed. The stock journal stores the ordinal, so new values go at the end.
+ */
+public enum StockMovementReason {
+    PRODUCT_ADDED(true),
+    PRODUCT_UPDATED(true),
+    PRODUCT_DELETED(false),
+    PRODUCT_IMPORTED(true),
+    STOCK_ADDED(true),
+    ORDER_PLACED(false),
+    ORDER_RETURNED(false),
+    CART_CHECKOUT(false),
+    // the stock a flash sale writes back is what its orders took, and those orders are counted on their own
+    FLASH_SALE(false),
+    RECONCILED(false),
+    ORDER_CANCELED(false);
+
+    private final boolean adjustment;
+
+    StockMovementReason(boolean adjustment) {
+        this.adjustment = adjustment;
+    }
+
+    /**
+     * Whether the stock itself was changed rather than taken or given back by an order. A product should have the sum
+     * of its adjustments minus the quantities in its placed and delivered orders.
+     */
+    public boolean isAdjustment() {
+        return adjustment;
+    }
+}
@@ -0,0 +1,4 @@
+package com.practice.onlineShop.exceptions;
+
+public class FlashSaleUnavailableException extends Exception{
+}
@@ -1,4 +1,20 @@
 package com.practice.onlineShop.exceptions;
 
+import java.util.Collection;
+import java.util.Collections;
+
 public class InvalidProductIdException extends Exception{
+    private final Collection<Long> invalidProductIds;
+
+    public InvalidProductIdException() {
+        this(Collections.emptyList());
+    }
+
+    public InvalidProductIdException(Collection<Long> invalidProductIds) {
+        this.invalidProductIds = invalidProductIds;
+    }
+
+    public Collection<Long> getInvalidProductIds() {
+        return invalidProductIds;
+    }
 }
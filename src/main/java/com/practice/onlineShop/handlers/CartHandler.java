@@ -0,0 +1,19 @@
+package com.practice.onlineShop.handlers;
+
+import com.practice.onlineShop.exceptions.ProductOnFlashSaleException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import static org.springframework.http.ResponseEntity.status;
+
+@ControllerAdvice
+public class CartHandler {
+
+    @ExceptionHandler(ProductOnFlashSaleException.class)
+    public ResponseEntity<String> handleProductOnFlashSaleException(){
+        return status(HttpStatus.CONFLICT).body("Produsul este la vanzare flash si nu poate fi rezervat in cos!");
+    }
+
+}
@@ -21,8 +21,12 @@ public class OrderHandler {
     }
 
     @ExceptionHandler(InvalidProductIdException.class)
-    public ResponseEntity<String> handleInvalidProductIdException(){
-        return status(HttpStatus.BAD_REQUEST).body("Id-ul unui produs nu este valid in comanda curenta!");
+    public ResponseEntity<String> handleInvalidProductIdException(InvalidProductIdException exception){
+        if (exception.getInvalidProductIds().isEmpty()) {
+            return status(HttpStatus.BAD_REQUEST).body("Id-ul unui produs nu este valid in comanda curenta!");
+        }
+        return status(HttpStatus.BAD_REQUEST).body("Id-urile urmatoarelor produse nu sunt valide in comanda curenta: "
+                + exception.getInvalidProductIds());
     }
 
     @ExceptionHandler(NotEnoughStockException.class)
@@ -49,4 +53,34 @@ public class OrderHandler {
     public ResponseEntity<String> handleOrderNotDeliveredYetException(){
         return status(HttpStatus.BAD_REQUEST).body("Comanda nu poate fii returnata pentru ca nu a fost livrata!");
     }
+
+    @ExceptionHandler(OrderBatchTooLargeException.class)
+    public ResponseEntity<String> handleOrderBatchTooLargeException(){
+        return status(HttpStatus.BAD_REQUEST).body("Lotul de comenzi este prea mare!");
+    }
+
+    @ExceptionHandler(OrderQueueFullException.class)
+    public ResponseEntity<String> handleOrderQueueFullException(){
+        return status(HttpStatus.SERVICE_UNAVAILABLE).body("Comanda nu poate fi preluata momentan, incercati mai tarziu!");
+    }
+
+    @ExceptionHandler(FlashSaleUnavailableException.class)
+    public ResponseEntity<String> handleFlashSaleUnavailableException(){
+        return status(HttpStatus.SERVICE_UNAVAILABLE).body("Vanzarea flash este aglomerata, incercati din nou!");
+    }
+
+    @ExceptionHandler(InvalidOrderTokenException.class)
+    public ResponseEntity<String> handleInvalidOrderTokenException(){
+        return status(HttpStatus.BAD_REQUEST).body("Token-ul comenzii nu este valid!");
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReusedException(){
+        return status(HttpStatus.UNPROCESSABLE_ENTITY).body("Cheia de idempotenta a fost folosita pentru o alta comanda!");
+    }
+
+    @ExceptionHandler(IdempotencyKeyInProgressException.class)
+    public ResponseEntity<String> handleIdempotencyKeyInProgressException(){
+        return status(HttpStatus.CONFLICT).body("Comanda cu aceasta cheie de idempotenta este inca in curs, incercati mai tarziu!");
+    }
 }
@@ -1,6 +1,11 @@
 package com.practice.onlineShop.handlers;
 
+import com.practice.onlineShop.exceptions.ConcurrentUpdateException;
+import com.practice.onlineShop.exceptions.InvalidImportFileException;
 import com.practice.onlineShop.exceptions.InvalidProductCodeException;
+import com.practice.onlineShop.exceptions.InvalidStockShardsException;
+import com.practice.onlineShop.exceptions.ReconciliationInProgressException;
+import com.practice.onlineShop.exceptions.StockReservedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -16,4 +21,29 @@ public class ProductHandler {
         return status(HttpStatus.BAD_REQUEST).body("Codul produsului trimis este invalid!");
     }
 
+    @ExceptionHandler(InvalidImportFileException.class)
+    public ResponseEntity<String> handleInvalidImportFileException(){
+        return status(HttpStatus.BAD_REQUEST).body("Fisierul de import este invalid!");
+    }
+
+    @ExceptionHandler(InvalidStockShardsException.class)
+    public ResponseEntity<String> handleInvalidStockShardsException(){
+        return status(HttpStatus.BAD_REQUEST).body("Numarul de shard-uri ale stocului este invalid!");
+    }
+
+    @ExceptionHandler(StockReservedException.class)
+    public ResponseEntity<String> handleStockReservedException(){
+        return status(HttpStatus.CONFLICT).body("Produsul are stoc rezervat in cosuri si nu poate intra la vanzare flash!");
+    }
+
+    @ExceptionHandler(ConcurrentUpdateException.class)
+    public ResponseEntity<String> handleConcurrentUpdateException(){
+        return status(HttpStatus.CONFLICT).body("Produsul a fost modificat in acelasi timp de alt utilizator, incercati din nou!");
+    }
+
+    @ExceptionHandler(ReconciliationInProgressException.class)
+    public ResponseEntity<String> handleReconciliationInProgressException(){
+        return status(HttpStatus.CONFLICT).body("O reconciliere a stocului este deja in curs!");
+    }
+
 }
@@ -0,0 +1,127 @@
+package com.practice.onlineShop.journal;
+
+import com.practice.onlineShop.enums.StockMovementReason;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped file of the stock journal. Records have a fixed size and carry a checksum, so reading stops at
+ * the first record that was never written or was torn by a crash, and appending goes on from there.
+ */
+class JournalSegment {
+    static final int RECORD_SIZE = 40;
+    private static final int CHECKSUM_OFFSET = 36;
+    private static final StockMovementReason[] REASONS = StockMovementReason.values();
+
+    private final Path path;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 checksum = new CRC32();
+    private int position;
+
+    private JournalSegment(Path path, long firstSequence, int size) throws IOException {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+        return new JournalSegment(directory.resolve(fileName(firstSequence)), firstSequence, size / RECORD_SIZE * RECORD_SIZE);
+    }
+
+    static JournalSegment open(Path path) throws IOException {
+        return new JournalSegment(path, firstSequenceOf(path), (int) (path.toFile().length() / RECORD_SIZE * RECORD_SIZE));
+    }
+
+    static String fileName(long firstSequence) {
+        return String.format("stock-journal-%020d.seg", firstSequence);
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().matches("stock-journal-\\d{20}\\.seg");
+    }
+
+    static long firstSequenceOf(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring("stock-journal-".length(), fileName.length() - ".seg".length()));
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    boolean hasRoom() {
+        return position + RECORD_SIZE <= buffer.capacity();
+    }
+
+    void append(StockMovement movement) {
+        record.clear();
+        record.putLong(movement.getSequence());
+        record.putLong(movement.getTimestamp());
+        record.putLong(movement.getProductId());
+        record.putLong(movement.getDelta());
+        record.put((byte) movement.getReason().ordinal());
+        checksum.reset();
+        checksum.update(record.array(), 0, CHECKSUM_OFFSET);
+        record.putInt(CHECKSUM_OFFSET, (int) checksum.getValue());
+        for (int offset = 0; offset < RECORD_SIZE; offset += Long.BYTES) {
+            buffer.putLong(position + offset, record.getLong(offset));
+        }
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * Reads the valid records from the start of the segment and leaves the append position after the last of them.
+     */
+    void read(Consumer<StockMovement> consumer) {
+        position = 0;
+        while (hasRoom()) {
+            for (int offset = 0; offset < RECORD_SIZE; offset += Long.BYTES) {
+                record.putLong(offset, buffer.getLong(position + offset));
+            }
+            checksum.reset();
+            checksum.update(record.array(), 0, CHECKSUM_OFFSET);
+            long sequence = record.getLong(0);
+            int reason = record.get(32);
+            if (sequence < firstSequence || record.getInt(CHECKSUM_OFFSET) != (int) checksum.getValue()
+                    || reason < 0 || reason >= REASONS.length) {
+                return;
+            }
+            consumer.accept(new StockMovement(sequence, record.getLong(8), record.getLong(16), record.getLong(24), REASONS[reason]));
+            position += RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Zeroes everything after the append position, so records that outlived a torn one can't follow the new ones.
+     */
+    void clearTail() {
+        for (int offset = position; offset + Long.BYTES <= buffer.capacity(); offset += Long.BYTES) {
+            if (buffer.getLong(offset) != 0) {
+                buffer.putLong(offset, 0);
+            }
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
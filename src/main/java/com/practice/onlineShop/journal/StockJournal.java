@@ -0,0 +1,518 @@
+package com.practice.onlineShop.journal;
+
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.vos.StockJournalStatsVO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of every change to the stock of the products. The records go into memory-mapped segment files
+ * of {@code stock.journal.segment-size-bytes}; a single flusher thread syncs them to disk, waiting
+ * {@code stock.journal.group-commit-millis} first so that the changes of concurrent orders share one sync. Every
+ * {@code stock.journal.snapshot-interval-records} records the stock of all products is written to a snapshot and the
+ * segments no snapshot needs any more are deleted, so opening the journal loads the last snapshot and replays only the
+ * records that came after it.
+ * Changes are appended once their transaction commits, without waiting for the sync, which the flusher does while
+ * the committing thread has already released its connection; a crash can lose the changes of the last
+ * {@code stock.journal.group-commit-millis}. A change that can't be written never fails its already committed
+ * transaction: the journal is marked degraded and keeps the stock in memory only, until the next {@link #snapshot()}
+ * writes it all to disk again. Besides the stock, the journal sums the
+ * {@link StockMovementReason#isAdjustment() adjustments} of every product, which is the stock the product should have
+ * before orders take from it.
+ */
+@Component
+public class StockJournal {
+    private static final int KEPT_SNAPSHOTS = 2;
+
+    private final boolean enabled;
+    private final boolean deleteOnClose;
+    private final Path directory;
+    private final int segmentSize;
+    private final long groupCommitMillis;
+    private final long snapshotIntervalRecords;
+    private final EventLogger eventLogger;
+    private final Map<Long, Long> stockByProductId = new HashMap<>();
+    private final Map<Long, Long> adjustmentsByProductId = new HashMap<>();
+    private final Map<Long, Integer> pendingByProductId = new ConcurrentHashMap<>();
+    private final Object snapshotLock = new Object();
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private JournalSegment segment;
+    private Thread flusher;
+    private boolean open;
+    private boolean degraded;
+    private boolean hasSnapshot;
+    private long lastSequence;
+    private long durableSequence;
+    private long snapshotSequence;
+    private long recordsSinceSnapshot;
+    private long syncs;
+    private long appended;
+
+    @Autowired
+    public StockJournal(@Value("${stock.journal.enabled:true}") boolean enabled,
+                        @Value("${stock.journal.dir:${java.io.tmpdir}/onlineShop/stock-journal}") String directory,
+                        @Value("${stock.journal.segment-size-bytes:67108864}") int segmentSize,
+                        @Value("${stock.journal.group-commit-millis:2}") long groupCommitMillis,
+                        @Value("${stock.journal.snapshot-interval-records:100000}") long snapshotIntervalRecords,
+                        @Value("${stock.journal.delete-on-close:false}") boolean deleteOnClose,
+                        EventLogger eventLogger) {
+        if (segmentSize < JournalSegment.RECORD_SIZE) {
+            throw new IllegalArgumentException("stock.journal.segment-size-bytes must hold at least one record");
+        }
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.groupCommitMillis = groupCommitMillis;
+        this.snapshotIntervalRecords = snapshotIntervalRecords;
+        this.deleteOnClose = deleteOnClose;
+        this.eventLogger = eventLogger;
+    }
+
+    /**
+     * Loads the last valid snapshot and replays the segments written after it. A record torn by a crash ends the
+     * replay of its segment, and the next appends overwrite it.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled || open) {
+            return;
+        }
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("journal.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("The stock journal in " + directory + " is used by another process");
+        }
+
+        for (Path snapshotPath : list(StockSnapshot::isSnapshot, Comparator.reverseOrder())) {
+            StockSnapshot snapshot = StockSnapshot.read(snapshotPath);
+            if (snapshot != null) {
+                stockByProductId.putAll(snapshot.getStockByProductId());
+                adjustmentsByProductId.putAll(snapshot.getAdjustmentsByProductId());
+                snapshotSequence = snapshot.getSequence();
+                lastSequence = snapshotSequence;
+                hasSnapshot = true;
+                break;
+            }
+            eventLogger.log("stockJournal.snapshot.damaged", "file", snapshotPath.getFileName());
+        }
+
+        List<Path> segmentPaths = list(JournalSegment::isSegment, Comparator.naturalOrder());
+        for (int i = 0; i < segmentPaths.size(); i++) {
+            JournalSegment journalSegment = JournalSegment.open(segmentPaths.get(i));
+            journalSegment.read(movement -> {
+                if (movement.getSequence() > lastSequence) {
+                    apply(movement);
+                    lastSequence = movement.getSequence();
+                    recordsSinceSnapshot++;
+                }
+            });
+            if (i == segmentPaths.size() - 1) {
+                journalSegment.clearTail();
+                segment = journalSegment;
+            } else {
+                journalSegment.close();
+            }
+        }
+        if (segment == null) {
+            segment = JournalSegment.create(directory, lastSequence + 1, segmentSize);
+        }
+        durableSequence = lastSequence;
+        open = true;
+
+        flusher = new Thread(this::flushLoop, "stock-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        eventLogger.log("stockJournal.opened", "snapshotSequence", snapshotSequence, "lastSequence", lastSequence,
+                "products", stockByProductId.size());
+    }
+
+    /**
+     * Stops the flusher and syncs the journal, after writing a last snapshot, or deletes the whole directory with
+     * {@code stock.journal.delete-on-close}, for a journal that lives no longer than an in-memory database.
+     */
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+        }
+        if (!deleteOnClose) {
+            snapshot();
+        }
+        synchronized (this) {
+            open = false;
+            notifyAll();
+        }
+        flusher.join();
+        synchronized (this) {
+            segment.force();
+            segment.close();
+            segment = null;
+            stockByProductId.clear();
+            adjustmentsByProductId.clear();
+            hasSnapshot = false;
+            lastSequence = durableSequence = snapshotSequence = recordsSinceSnapshot = 0;
+            degraded = false;
+            lock.release();
+            lockChannel.close();
+            if (deleteOnClose) {
+                for (Path file : list(file -> true, Comparator.naturalOrder())) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a change couldn't be written to disk, so the journal only keeps the stock in memory.
+     */
+    public synchronized boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Whether the journal has neither a snapshot nor a record yet, so the current stock has to be loaded with
+     * {@link #initialize(Map, Map)} before the changes make sense.
+     */
+    public synchronized boolean isEmpty() {
+        return open && !hasSnapshot && lastSequence == 0;
+    }
+
+    /**
+     * Starts an empty journal from the stock the products have now, and the adjustments that stock came from, by
+     * writing them as the first snapshot.
+     */
+    public void initialize(Map<Long, Long> stocks, Map<Long, Long> adjustments) throws IOException {
+        synchronized (this) {
+            if (!isEmpty()) {
+                return;
+            }
+            stockByProductId.putAll(stocks);
+            adjustmentsByProductId.putAll(adjustments);
+        }
+        snapshot();
+    }
+
+    /**
+     * Appends a change of stock once the current transaction commits, or right away outside of a transaction.
+     * The changes of one transaction are appended together and waited for once.
+     */
+    public void appendAfterCommit(long productId, long delta, StockMovementReason reason) {
+        if (!enabled || (delta == 0 && reason != StockMovementReason.PRODUCT_DELETED)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(Collections.singletonList(new PendingMovement(productId, delta, reason)));
+            return;
+        }
+        JournalSynchronization synchronization = null;
+        for (TransactionSynchronization registered : TransactionSynchronizationManager.getSynchronizations()) {
+            if (registered instanceof JournalSynchronization && ((JournalSynchronization) registered).getJournal() == this) {
+                synchronization = (JournalSynchronization) registered;
+            }
+        }
+        // found through the synchronizations, which a nested transaction suspends, rather than a bound resource
+        if (synchronization == null) {
+            synchronization = new JournalSynchronization();
+            TransactionSynchronizationManager.registerSynchronization(synchronization);
+        }
+        synchronization.movements.add(new PendingMovement(productId, delta, reason));
+        pendingByProductId.merge(productId, 1, Integer::sum);
+    }
+
+    /**
+     * Appends the changes for the flusher to sync. Runs after their transaction committed, so it never throws: a change
+     * that can't be written marks the journal degraded and is only applied in memory.
+     */
+    private synchronized void append(List<PendingMovement> movements) {
+        if (!enabled || movements.isEmpty()) {
+            return;
+        }
+        if (!open) {
+            eventLogger.log("stockJournal.append.closed", "records", movements.size());
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        for (PendingMovement pendingMovement : movements) {
+            StockMovement movement = new StockMovement(lastSequence + 1, timestamp, pendingMovement.productId,
+                    pendingMovement.delta, pendingMovement.reason);
+            if (!degraded) {
+                try {
+                    if (!segment.hasRoom()) {
+                        roll();
+                    }
+                    segment.append(movement);
+                } catch (IOException | RuntimeException exception) {
+                    degraded = true;
+                    eventLogger.log("stockJournal.append.failed", "sequence", movement.getSequence(), "exception",
+                            exception.getClass().getSimpleName());
+                }
+            }
+            lastSequence = movement.getSequence();
+            apply(movement);
+            appended++;
+            recordsSinceSnapshot++;
+        }
+        notifyAll();
+    }
+
+    public synchronized Long getStock(long productId) {
+        return stockByProductId.get(productId);
+    }
+
+    public synchronized Map<Long, Long> getStocks() {
+        return new HashMap<>(stockByProductId);
+    }
+
+    /**
+     * Returns the sum of the adjustments of a product, or {@code null} when the journal doesn't know the product.
+     */
+    public synchronized Long getAdjustments(long productId) {
+        return adjustmentsByProductId.get(productId);
+    }
+
+    public synchronized Map<Long, Long> getAdjustments() {
+        return new HashMap<>(adjustmentsByProductId);
+    }
+
+    /**
+     * Waits until the changes of the products made by committed transactions are in the journal. A caller holding the
+     * locks of the products knows that no new change can come meanwhile, so what it reads afterwards is up to date.
+     * Returns {@code false} if that took longer than {@code timeoutMillis} or the thread was interrupted.
+     */
+    public boolean awaitAppended(Collection<Long> productIds, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Long productId : productIds) {
+            while (pendingByProductId.containsKey(productId)) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public synchronized StockJournalStatsVO getStats() {
+        StockJournalStatsVO stats = new StockJournalStatsVO();
+        stats.setEnabled(enabled);
+        stats.setDegraded(degraded);
+        stats.setLastSequence(lastSequence);
+        stats.setDurableSequence(durableSequence);
+        stats.setSnapshotSequence(snapshotSequence);
+        stats.setAppended(appended);
+        stats.setSyncs(syncs);
+        stats.setProducts(stockByProductId.size());
+        if (open) {
+            try {
+                stats.setSegments(list(JournalSegment::isSegment, Comparator.naturalOrder()).size());
+            } catch (IOException exception) {
+                stats.setSegments(-1);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Writes the stock of all products as of the last record, then deletes the snapshots and segments that are older
+     * than the oldest snapshot kept.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            StockSnapshot snapshot;
+            boolean written = false;
+            synchronized (this) {
+                if (!open) {
+                    return;
+                }
+                snapshot = new StockSnapshot(lastSequence, new HashMap<>(stockByProductId), new HashMap<>(adjustmentsByProductId));
+                recordsSinceSnapshot = 0;
+                if (degraded) {
+                    // the segments miss records, so nothing may be appended until the snapshot covers them
+                    snapshot.write(directory);
+                    written = true;
+                    segment.close();
+                    segment = JournalSegment.create(directory, lastSequence + 1, segmentSize);
+                    durableSequence = lastSequence;
+                    degraded = false;
+                    eventLogger.log("stockJournal.recovered", "sequence", lastSequence);
+                }
+            }
+            sync();
+            if (!written) {
+                snapshot.write(directory);
+            }
+            synchronized (this) {
+                snapshotSequence = snapshot.getSequence();
+                hasSnapshot = true;
+            }
+            deleteOldFiles();
+            eventLogger.log("stockJournal.snapshot", "sequence", snapshot.getSequence(),
+                    "products", snapshot.getStockByProductId().size());
+        }
+    }
+
+    private void apply(StockMovement movement) {
+        if (movement.getReason() == StockMovementReason.PRODUCT_DELETED) {
+            stockByProductId.remove(movement.getProductId());
+            adjustmentsByProductId.remove(movement.getProductId());
+            return;
+        }
+        stockByProductId.merge(movement.getProductId(), movement.getDelta(), Long::sum);
+        if (movement.getReason().isAdjustment()) {
+            adjustmentsByProductId.merge(movement.getProductId(), movement.getDelta(), Long::sum);
+        }
+    }
+
+    private void roll() throws IOException {
+        segment.force();
+        segment.close();
+        segment = JournalSegment.create(directory, lastSequence + 1, segmentSize);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            boolean snapshotDue;
+            synchronized (this) {
+                // a degraded journal has nothing to sync, only the next snapshot can write its records again
+                while (open && (degraded ? recordsSinceSnapshot < snapshotIntervalRecords
+                        : durableSequence == lastSequence)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException exception) {
+                        return;
+                    }
+                }
+                if (!open) {
+                    return;
+                }
+                snapshotDue = recordsSinceSnapshot >= snapshotIntervalRecords;
+            }
+            try {
+                // the changes appended meanwhile are synced together with the first one
+                if (groupCommitMillis > 0) {
+                    Thread.sleep(groupCommitMillis);
+                }
+                sync();
+                if (snapshotDue) {
+                    snapshot();
+                }
+            } catch (InterruptedException exception) {
+                return;
+            } catch (IOException | RuntimeException exception) {
+                eventLogger.log("stockJournal.flush.failed", "exception", exception.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private void sync() {
+        JournalSegment currentSegment;
+        long sequence;
+        synchronized (this) {
+            if (degraded) {
+                return;
+            }
+            currentSegment = segment;
+            sequence = lastSequence;
+        }
+        // the records before this segment were synced when it was rolled
+        currentSegment.force();
+        synchronized (this) {
+            if (sequence > durableSequence) {
+                durableSequence = sequence;
+                syncs++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void deleteOldFiles() throws IOException {
+        List<Path> snapshots = list(StockSnapshot::isSnapshot, Comparator.reverseOrder());
+        if (snapshots.size() < KEPT_SNAPSHOTS) {
+            return;
+        }
+        for (Path oldSnapshot : snapshots.subList(KEPT_SNAPSHOTS, snapshots.size())) {
+            Files.deleteIfExists(oldSnapshot);
+        }
+        long oldestKeptSequence = StockSnapshot.sequenceOf(snapshots.get(KEPT_SNAPSHOTS - 1));
+        List<Path> segments = list(JournalSegment::isSegment, Comparator.naturalOrder());
+        // a segment is no longer needed when the next one starts at or before the first record after the snapshot
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (JournalSegment.firstSequenceOf(segments.get(i + 1)) > oldestKeptSequence + 1) {
+                return;
+            }
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private List<Path> list(Predicate<Path> filter, Comparator<Path> order) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(filter).sorted(order).collect(Collectors.toList());
+        }
+    }
+
+    private class JournalSynchronization implements TransactionSynchronization {
+        private final List<PendingMovement> movements = new ArrayList<>();
+
+        private StockJournal getJournal() {
+            return StockJournal.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            append(movements);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            movements.forEach(movement -> pendingByProductId.computeIfPresent(movement.productId,
+                    (productId, pending) -> pending == 1 ? null : pending - 1));
+        }
+    }
+
+    private static class PendingMovement {
+        private final long productId;
+        private final long delta;
+        private final StockMovementReason reason;
+
+        private PendingMovement(long productId, long delta, StockMovementReason reason) {
+            this.productId = productId;
+            this.delta = delta;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.practice.onlineShop.journal;
+
+import com.practice.onlineShop.enums.StockMovementReason;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * One record of the stock journal: the stock of a product changed by {@code delta}, or the product was deleted.
+ */
+@Getter
+@RequiredArgsConstructor
+public class StockMovement {
+    private final long sequence;
+    private final long timestamp;
+    private final long productId;
+    private final long delta;
+    private final StockMovementReason reason;
+}
@@ -0,0 +1,107 @@
+package com.practice.onlineShop.journal;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The stock of every product, and the sum of its adjustments, after the journal record {@code sequence}. A snapshot is written to a temporary file,
+ * synced and then renamed, so a crash leaves either the whole file or none of it; the checksum catches the rest.
+ */
+class StockSnapshot {
+    private static final int MAGIC = 0x53544B53;
+    private static final int VERSION = 2;
+
+    private final long sequence;
+    private final Map<Long, Long> stockByProductId;
+    private final Map<Long, Long> adjustmentsByProductId;
+
+    StockSnapshot(long sequence, Map<Long, Long> stockByProductId, Map<Long, Long> adjustmentsByProductId) {
+        this.sequence = sequence;
+        this.stockByProductId = stockByProductId;
+        this.adjustmentsByProductId = adjustmentsByProductId;
+    }
+
+    static String fileName(long sequence) {
+        return String.format("stock-snapshot-%020d.snap", sequence);
+    }
+
+    static boolean isSnapshot(Path path) {
+        return path.getFileName().toString().matches("stock-snapshot-\\d{20}\\.snap");
+    }
+
+    static long sequenceOf(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring("stock-snapshot-".length(), fileName.length() - ".snap".length()));
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    Map<Long, Long> getStockByProductId() {
+        return stockByProductId;
+    }
+
+    Map<Long, Long> getAdjustmentsByProductId() {
+        return adjustmentsByProductId;
+    }
+
+    Path write(Path directory) throws IOException {
+        Path path = directory.resolve(fileName(sequence));
+        Path temporaryPath = directory.resolve(fileName(sequence) + ".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryPath.toFile())) {
+            CheckedOutputStream checkedOutputStream = new CheckedOutputStream(new BufferedOutputStream(fileOutputStream), new CRC32());
+            DataOutputStream output = new DataOutputStream(checkedOutputStream);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sequence);
+            output.writeInt(stockByProductId.size());
+            for (Map.Entry<Long, Long> stock : stockByProductId.entrySet()) {
+                output.writeLong(stock.getKey());
+                output.writeLong(stock.getValue());
+                output.writeLong(adjustmentsByProductId.getOrDefault(stock.getKey(), 0L));
+            }
+            output.writeLong(checkedOutputStream.getChecksum().getValue());
+            output.flush();
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return path;
+    }
+
+    /**
+     * Returns {@code null} when the file is damaged.
+     */
+    static StockSnapshot read(Path path) throws IOException {
+        try (CheckedInputStream checkedInputStream = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), new CRC32())) {
+            DataInputStream input = new DataInputStream(checkedInputStream);
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            long sequence = input.readLong();
+            int count = input.readInt();
+            Map<Long, Long> stockByProductId = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+            Map<Long, Long> adjustmentsByProductId = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                long productId = input.readLong();
+                stockByProductId.put(productId, input.readLong());
+                adjustmentsByProductId.put(productId, input.readLong());
+            }
+            long expectedChecksum = checkedInputStream.getChecksum().getValue();
+            if (input.readLong() != expectedChecksum) {
+                return null;
+            }
+            return new StockSnapshot(sequence, stockByProductId, adjustmentsByProductId);
+        } catch (EOFException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.practice.onlineShop.logging;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event logger. Request threads only copy the event name and its key/value pairs into a preallocated ring
+ * buffer; a single background thread formats them as {@code key=value} lines and writes them out. Values other than
+ * strings, numbers, booleans and enums are turned into strings by the caller, since they may change once the caller
+ * moves on. When the buffer is full the event is dropped and counted instead of blocking the caller.
+ */
+@Component
+public class EventLogger {
+    private static final int MAX_FIELDS = 3;
+
+    private final boolean enabled;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Writer writer;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    @Autowired
+    public EventLogger(@Value("${logging.events.enabled:true}") boolean enabled,
+                       @Value("${logging.events.buffer-size:8192}") int bufferSize) {
+        this(enabled, bufferSize, new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+    }
+
+    EventLogger(boolean enabled, int bufferSize, Writer writer) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("logging.events.buffer-size must be a power of two");
+        }
+        this.enabled = enabled;
+        this.slots = new Slot[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = bufferSize - 1;
+        this.writer = new BufferedWriter(writer);
+        this.writerThread = new Thread(this::drain, "event-logger");
+        this.writerThread.setDaemon(true);
+        if (enabled) {
+            this.writerThread.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void log(String event) {
+        publish(event, null, null, null, null, null, null);
+    }
+
+    public void log(String event, String key1, Object value1) {
+        publish(event, key1, value1, null, null, null, null);
+    }
+
+    public void log(String event, String key1, Object value1, String key2, Object value2) {
+        publish(event, key1, value1, key2, value2, null, null);
+    }
+
+    public void log(String event, String key1, Object value1, String key2, Object value2, String key3, Object value3) {
+        publish(event, key1, value1, key2, value2, key3, value3);
+    }
+
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    public long getPendingEvents() {
+        return claimed.get() - written.get();
+    }
+
+    private void publish(String event, String key1, Object value1, String key2, Object value2, String key3, Object value3) {
+        if (!enabled) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written.get() >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.event = event;
+        slot.keys[0] = key1;
+        slot.values[0] = freeze(value1);
+        slot.keys[1] = key2;
+        slot.values[1] = freeze(value2);
+        slot.keys[2] = key3;
+        slot.values[2] = freeze(value3);
+        slot.published = sequence;
+    }
+
+    private static Object freeze(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Enum) {
+            return value;
+        }
+        try {
+            return String.valueOf(value);
+        } catch (RuntimeException exception) {
+            return "<" + exception.getClass().getSimpleName() + ">";
+        }
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long next = 0;
+        while (running || next < claimed.get()) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.published != next) {
+                flushQuietly();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            try {
+                format(slot, line);
+            } catch (RuntimeException exception) {
+                line.setLength(0);
+                line.append("ts=").append(Instant.ofEpochMilli(slot.timestamp)).append(" event=").append(slot.event)
+                        .append(" formatError=").append(exception.getClass().getSimpleName()).append(System.lineSeparator());
+            }
+            slot.clear();
+            written.lazySet(++next);
+            try {
+                writer.append(line);
+            } catch (IOException ignored) {
+                // nowhere left to report it
+            }
+        }
+        flushQuietly();
+    }
+
+    private void format(Slot slot, StringBuilder line) {
+        line.setLength(0);
+        line.append("ts=").append(Instant.ofEpochMilli(slot.timestamp)).append(" event=").append(slot.event);
+        for (int i = 0; i < MAX_FIELDS; i++) {
+            if (slot.keys[i] != null) {
+                line.append(' ').append(slot.keys[i]).append('=').append(slot.values[i]);
+            }
+        }
+        line.append(System.lineSeparator());
+    }
+
+    private void flushQuietly() {
+        try {
+            writer.flush();
+        } catch (IOException ignored) {
+            // nowhere left to report it
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writerThread.isAlive()) {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static class Slot {
+        private volatile long published = -1;
+        private long timestamp;
+        private String event;
+        private final String[] keys = new String[MAX_FIELDS];
+        private final Object[] values = new Object[MAX_FIELDS];
+
+        private void clear() {
+            event = null;
+            for (int i = 0; i < MAX_FIELDS; i++) {
+                keys[i] = null;
+                values[i] = null;
+            }
+        }
+    }
+}
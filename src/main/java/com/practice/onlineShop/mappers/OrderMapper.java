@@ -4,21 +4,24 @@ import com.practice.onlineShop.entities.OrderItem;
 import com.practice.onlineShop.entities.Orders;
 import com.practice.onlineShop.entities.Product;
 import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.Currencies;
 import com.practice.onlineShop.exceptions.InvalidCustomerIdException;
 import com.practice.onlineShop.exceptions.InvalidProductIdException;
 import com.practice.onlineShop.exceptions.InvalidProductsException;
 import com.practice.onlineShop.repositories.ProductRepository;
-import com.practice.onlineShop.repositories.UserRepository;
+import com.practice.onlineShop.vos.OrderHistoryVO;
+import com.practice.onlineShop.vos.OrderItemVO;
 import com.practice.onlineShop.vos.OrderVO;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import javax.persistence.EntityManager;
 import java.util.*;
 
 @Component
 @RequiredArgsConstructor
 public class OrderMapper {
-    private final UserRepository userRepository;
+    private final EntityManager entityManager;
     private final ProductRepository productRepository;
 
     public Orders toEntity (OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException {
@@ -27,41 +30,107 @@ public class OrderMapper {
         }
         validateOrder(orderVO);
 
-        Orders order = new Orders();
-
-        Optional<User> userOptional = userRepository.findById(orderVO.getUserId().longValue());
-
-        if (!userOptional.isPresent()){
+        if (orderVO.getUserId() == null) {
             throw new InvalidCustomerIdException();
         }
 
-        order.setUser(userOptional.get());
+        Map<Long, Product> productsById = getProductsById(orderVO.getProductsIdsToQuantity().keySet());
+        return toEntity(orderVO, productsById);
+    }
+
+    /**
+     * Builds the order from products that were already loaded by the caller, so a batch of orders can share the
+     * same lookup. Every product of the order has to be present in {@code productsById}.
+     */
+    public Orders toEntity(OrderVO orderVO, Map<Long, Product> productsById) {
+        Orders order = new Orders();
+        // the user was already checked by the caller, so only a reference is needed here
+        order.setUser(entityManager.getReference(User.class, orderVO.getUserId().longValue()));
 
         Map<Integer, Integer> productsIdsToQuantityMap = orderVO.getProductsIdsToQuantity();
-        List<OrderItem> orderItemsList = new ArrayList<>();
+        List<OrderItem> orderItemsList = new ArrayList<>(productsIdsToQuantityMap.size());
 
-        Set<Integer> productsIds = productsIdsToQuantityMap.keySet();
-        for (Integer productId: productsIds){
+        for (Map.Entry<Integer, Integer> productIdToQuantity : productsIdsToQuantityMap.entrySet()){
+            Product product = productsById.get(productIdToQuantity.getKey().longValue());
             OrderItem orderItem = new OrderItem();
-
-            Optional<Product> productOptional = productRepository.findById(productId.longValue());
-
-            if(!productOptional.isPresent()){
-                throw new InvalidProductIdException();
-            }
-            orderItem.setProduct(productOptional.get());
-            Integer productQuantity = productsIdsToQuantityMap.get(productId);
-            orderItem.setQuantity(productQuantity);
+            orderItem.setProduct(product);
+            orderItem.setQuantity(productIdToQuantity.getValue());
+            // the price is kept as it was when the order was placed
+            orderItem.setUnitPrice(product.getPrice());
+            orderItem.setCurrency(product.getCurrency());
+            order.addToTotal(product.getCurrency(), product.getPrice() * orderItem.getQuantity());
             orderItemsList.add(orderItem);
         }
         order.setOrderItems(orderItemsList);
         return order;
     }
 
+    public OrderHistoryVO toHistoryVO(Orders order) {
+        OrderHistoryVO orderHistoryVO = new OrderHistoryVO();
+        orderHistoryVO.setId(order.getId());
+        orderHistoryVO.setStatus(order.getStatus());
+        List<OrderItemVO> orderItems = new ArrayList<>(order.getOrderItems().size());
+        for (OrderItem orderItem : order.getOrderItems()) {
+            OrderItemVO orderItemVO = new OrderItemVO();
+            orderItemVO.setProductId(orderItem.getProduct().getId());
+            orderItemVO.setProductCode(orderItem.getProduct().getCode());
+            orderItemVO.setQuantity(orderItem.getQuantity());
+            orderItemVO.setUnitPrice(orderItem.getUnitPrice());
+            orderItemVO.setCurrency(orderItem.getCurrency());
+            orderItems.add(orderItemVO);
+        }
+        orderHistoryVO.setOrderItems(orderItems);
+        orderHistoryVO.setTotals(toTotals(order.getTotalEur(), order.getTotalUsd(), order.getTotalRon()));
+        return orderHistoryVO;
+    }
+
+    /**
+     * Keeps only the currencies the order was actually paid in.
+     */
+    public static Map<Currencies, Double> toTotals(double totalEur, double totalUsd, double totalRon) {
+        Map<Currencies, Double> totals = new EnumMap<>(Currencies.class);
+        if (totalEur != 0) {
+            totals.put(Currencies.EUR, totalEur);
+        }
+        if (totalUsd != 0) {
+            totals.put(Currencies.USD, totalUsd);
+        }
+        if (totalRon != 0) {
+            totals.put(Currencies.RON, totalRon);
+        }
+        return totals;
+    }
+
+    private Map<Long, Product> getProductsById(Set<Integer> productsIds) throws InvalidProductIdException {
+        Set<Long> requestedIds = new HashSet<>();
+        for (Integer productId : productsIds) {
+            requestedIds.add(productId.longValue());
+        }
+
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllById(requestedIds)) {
+            // a product without a currency has no price it could be ordered at
+            if (product.getCurrency() != null) {
+                productsById.put(product.getId(), product);
+            }
+        }
+
+        if (productsById.size() != requestedIds.size()) {
+            requestedIds.removeAll(productsById.keySet());
+            throw new InvalidProductIdException(new TreeSet<>(requestedIds));
+        }
+        return productsById;
+    }
+
     private void validateOrder(OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException {
 
-        if(orderVO.getProductsIdsToQuantity().keySet().isEmpty()) {
+        if(orderVO.getProductsIdsToQuantity() == null || orderVO.getProductsIdsToQuantity().keySet().isEmpty()) {
             throw new InvalidProductsException();
         }
+        for (Integer quantity : orderVO.getProductsIdsToQuantity().values()) {
+            if (quantity == null || quantity <= 0) {
+                throw new InvalidProductsException();
+            }
+        }
     }
 }
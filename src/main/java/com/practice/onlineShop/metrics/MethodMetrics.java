@@ -0,0 +1,36 @@
+package com.practice.onlineShop.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MethodMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<Class<? extends Throwable>, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    public void recordSuccess(long nanos) {
+        latency.record(nanos);
+    }
+
+    public void recordError(long nanos, Throwable throwable) {
+        latency.record(nanos);
+        errors.computeIfAbsent(throwable.getClass(), exceptionClass -> new LongAdder()).increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public Map<Class<? extends Throwable>, LongAdder> getErrors() {
+        return errors;
+    }
+}
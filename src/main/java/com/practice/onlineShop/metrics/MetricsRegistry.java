@@ -0,0 +1,129 @@
+package com.practice.onlineShop.metrics;
+
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.vos.ProductCacheStatsVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+@Component
+@RequiredArgsConstructor
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<Method, MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+    private final LongAdder optimisticLockRetries = new LongAdder();
+    private final LongAdder optimisticLockFailures = new LongAdder();
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public MethodMetrics getMethodMetrics(Method method) {
+        MethodMetrics metrics = methodMetrics.get(method);
+        if (metrics == null) {
+            metrics = methodMetrics.computeIfAbsent(method,
+                    key -> new MethodMetrics(key.getDeclaringClass().getSimpleName() + "." + key.getName()));
+        }
+        return metrics;
+    }
+
+    /**
+     * Counts an optimistic locking conflict, which is either retried or given up on.
+     */
+    public void recordOptimisticLockConflict(boolean retried) {
+        if (retried) {
+            optimisticLockRetries.increment();
+        } else {
+            optimisticLockFailures.increment();
+        }
+    }
+
+    /**
+     * Adds a value read on every scrape, so components report their own state without this registry depending on them.
+     * {@code type} is the Prometheus type, gauge or counter.
+     */
+    public void registerGauge(String name, String type, LongSupplier value) {
+        gauges.put(name, new Gauge(type, value));
+    }
+
+    public long getOptimisticLockRetries() {
+        return optimisticLockRetries.sum();
+    }
+
+    public long getOptimisticLockFailures() {
+        return optimisticLockFailures.sum();
+    }
+
+    public String scrape() {
+        StringBuilder output = new StringBuilder(4096);
+        output.append("# TYPE onlineshop_method_latency_seconds summary\n");
+        methodMetrics.values().stream()
+                .sorted(Comparator.comparing(MethodMetrics::getName))
+                .forEach(metrics -> appendMethodMetrics(output, metrics));
+
+        output.append("# TYPE onlineshop_method_errors_total counter\n");
+        methodMetrics.values().stream()
+                .sorted(Comparator.comparing(MethodMetrics::getName))
+                .forEach(metrics -> appendErrors(output, metrics));
+
+        ProductCacheStatsVO cacheStats = productCache.getStats();
+        appendValue(output, "onlineshop_product_cache_size", "gauge", cacheStats.getSize());
+        appendValue(output, "onlineshop_product_cache_hits_total", "counter", cacheStats.getHits());
+        appendValue(output, "onlineshop_product_cache_misses_total", "counter", cacheStats.getMisses());
+        appendValue(output, "onlineshop_product_cache_evictions_total", "counter", cacheStats.getEvictions());
+        appendValue(output, "onlineshop_log_events_dropped_total", "counter", eventLogger.getDroppedEvents());
+        appendValue(output, "onlineshop_optimistic_lock_retries_total", "counter", getOptimisticLockRetries());
+        appendValue(output, "onlineshop_optimistic_lock_failures_total", "counter", getOptimisticLockFailures());
+
+        gauges.forEach((name, gauge) -> appendValue(output, name, gauge.type, gauge.value.getAsLong()));
+        return output.toString();
+    }
+
+    private void appendMethodMetrics(StringBuilder output, MethodMetrics metrics) {
+        LatencyHistogram latency = metrics.getLatency();
+        for (double quantile : QUANTILES) {
+            output.append("onlineshop_method_latency_seconds{method=\"").append(metrics.getName())
+                    .append("\",quantile=\"").append(quantile).append("\"} ")
+                    .append(toSeconds(latency.getValueAtPercentile(quantile * 100))).append('\n');
+        }
+        output.append("onlineshop_method_latency_seconds_count{method=\"").append(metrics.getName()).append("\"} ")
+                .append(latency.getCount()).append('\n');
+        output.append("onlineshop_method_latency_seconds_sum{method=\"").append(metrics.getName()).append("\"} ")
+                .append(toSeconds(latency.getTotalNanos())).append('\n');
+    }
+
+    private void appendErrors(StringBuilder output, MethodMetrics metrics) {
+        for (Map.Entry<Class<? extends Throwable>, LongAdder> error : metrics.getErrors().entrySet()) {
+            output.append("onlineshop_method_errors_total{method=\"").append(metrics.getName())
+                    .append("\",exception=\"").append(error.getKey().getSimpleName()).append("\"} ")
+                    .append(error.getValue().sum()).append('\n');
+        }
+    }
+
+    private void appendValue(StringBuilder output, String name, String type, long value) {
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    private double toSeconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    private static class Gauge {
+        private final String type;
+        private final LongSupplier value;
+
+        private Gauge(String type, LongSupplier value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.practice.onlineShop.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+public class SqlStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        SqlStatistics sqlStatistics = SqlStatistics.current();
+        if (sqlStatistics != null) {
+            sqlStatistics.addStatement();
+        }
+        return sql;
+    }
+}
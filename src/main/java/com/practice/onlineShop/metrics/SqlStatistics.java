@@ -0,0 +1,42 @@
+package com.practice.onlineShop.metrics;
+
+/**
+ * SQL statements and JDBC execution time of the current thread, between {@link #begin()} and {@link #end()}.
+ * Fed by {@link SqlStatementInspector} and {@link SqlTimingSessionListener}.
+ */
+public class SqlStatistics {
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+    private int statementCount;
+    private long jdbcNanos;
+
+    public static SqlStatistics begin() {
+        SqlStatistics sqlStatistics = new SqlStatistics();
+        CURRENT.set(sqlStatistics);
+        return sqlStatistics;
+    }
+
+    public static SqlStatistics current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    void addStatement() {
+        statementCount++;
+    }
+
+    void addJdbcNanos(long nanos) {
+        jdbcNanos += nanos;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public long getJdbcNanos() {
+        return jdbcNanos;
+    }
+}
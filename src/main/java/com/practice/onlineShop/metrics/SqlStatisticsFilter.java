@@ -0,0 +1,196 @@
+package com.practice.onlineShop.metrics;
+
+import com.practice.onlineShop.logging.EventLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the SQL statements and JDBC time of each request and returns them as response headers. The headers are
+ * added right before the response starts being written, so they count the statements run until then and the body is
+ * never buffered. Requests over {@code sql.statistics.statement-budget} statements are flagged with a header and a log
+ * event.
+ */
+@Component
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+    public static final String STATEMENT_COUNT_HEADER = "X-SQL-Statement-Count";
+    public static final String JDBC_TIME_HEADER = "X-SQL-Time-Micros";
+    public static final String BUDGET_EXCEEDED_HEADER = "X-SQL-Budget-Exceeded";
+
+    private final EventLogger eventLogger;
+    private final int statementBudget;
+
+    public SqlStatisticsFilter(EventLogger eventLogger, @Value("${sql.statistics.statement-budget:50}") int statementBudget) {
+        this.eventLogger = eventLogger;
+        this.statementBudget = statementBudget;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatistics sqlStatistics = SqlStatistics.begin();
+        try {
+            StatisticsResponseWrapper responseWrapper = new StatisticsResponseWrapper(response, sqlStatistics);
+            filterChain.doFilter(request, responseWrapper);
+            // a response without a body was never written to
+            responseWrapper.writeHeaders();
+            if (sqlStatistics.getStatementCount() > statementBudget) {
+                eventLogger.log("sql.budget.exceeded", "method", request.getMethod(), "uri", request.getRequestURI(),
+                        "statements", sqlStatistics.getStatementCount());
+            }
+        } finally {
+            SqlStatistics.end();
+        }
+    }
+
+    /**
+     * Adds the headers when the response is first written, flushed or sent as an error or redirect, which all commit it.
+     */
+    private class StatisticsResponseWrapper extends HttpServletResponseWrapper {
+        private final SqlStatistics sqlStatistics;
+        private boolean headersWritten;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private StatisticsResponseWrapper(HttpServletResponse response, SqlStatistics sqlStatistics) {
+            super(response);
+            this.sqlStatistics = sqlStatistics;
+        }
+
+        private void writeHeaders() {
+            if (headersWritten || isCommitted()) {
+                return;
+            }
+            headersWritten = true;
+            setHeader(STATEMENT_COUNT_HEADER, String.valueOf(sqlStatistics.getStatementCount()));
+            setHeader(JDBC_TIME_HEADER, String.valueOf(TimeUnit.NANOSECONDS.toMicros(sqlStatistics.getJdbcNanos())));
+            if (sqlStatistics.getStatementCount() > statementBudget) {
+                setHeader(BUDGET_EXCEEDED_HEADER, "true");
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new HeaderWritingOutputStream(super.getOutputStream(), this);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new HeaderWritingWriter(super.getWriter(), this));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeHeaders();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeHeaders();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeHeaders();
+            super.sendRedirect(location);
+        }
+    }
+
+    private static class HeaderWritingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private final StatisticsResponseWrapper response;
+
+        private HeaderWritingOutputStream(ServletOutputStream delegate, StatisticsResponseWrapper response) {
+            this.delegate = delegate;
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            response.writeHeaders();
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            response.writeHeaders();
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            response.writeHeaders();
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.writeHeaders();
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+
+    private static class HeaderWritingWriter extends Writer {
+        private final PrintWriter delegate;
+        private final StatisticsResponseWrapper response;
+
+        private HeaderWritingWriter(PrintWriter delegate, StatisticsResponseWrapper response) {
+            this.delegate = delegate;
+            this.response = response;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            response.writeHeaders();
+            delegate.write(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+            response.writeHeaders();
+            delegate.flush();
+        }
+
+        @Override
+        public void close() {
+            response.writeHeaders();
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.practice.onlineShop.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+public class SqlTimingSessionListener extends BaseSessionEventListener {
+    private long executionStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        addElapsedTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        addElapsedTime();
+    }
+
+    private void addElapsedTime() {
+        SqlStatistics sqlStatistics = SqlStatistics.current();
+        if (sqlStatistics != null) {
+            sqlStatistics.addJdbcNanos(System.nanoTime() - executionStart);
+        }
+    }
+}
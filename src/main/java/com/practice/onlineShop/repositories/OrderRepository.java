@@ -1,9 +1,61 @@
 package com.practice.onlineShop.repositories;
 
 import com.practice.onlineShop.entities.Orders;
+import com.practice.onlineShop.enums.OrderStatus;
+import com.practice.onlineShop.vos.OrderSummaryVO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface OrderRepository extends CrudRepository<Orders, Long> {
+
+    @Modifying
+    @Query("update Orders o set o.status = :target where o.id = :id and o.status in :sources")
+    int updateStatus(@Param("id") long id, @Param("target") OrderStatus target, @Param("sources") Collection<OrderStatus> sources);
+
+    @Modifying
+    @Query("update Orders o set o.status = :target where o.id in :ids and o.status in :sources")
+    int updateStatuses(@Param("ids") Collection<Long> ids, @Param("target") OrderStatus target, @Param("sources") Collection<OrderStatus> sources);
+
+    @Query("select o.id, o.status from Orders o where o.id in :ids")
+    List<Object[]> findIdsAndStatusesByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select o.id from Orders o where o.user.id = :userId and o.id > :after" +
+            " and (:status is null or o.status = :status)" +
+            " order by o.id")
+    List<Long> findIdPageByUserIdAfter(@Param("userId") long userId,
+                                       @Param("after") long after,
+                                       @Param("status") OrderStatus status,
+                                       Pageable pageable);
+
+    @Query("select distinct o from Orders o left join fetch o.orderItems i left join fetch i.product" +
+            " join fetch o.user where o.id in :ids order by o.id")
+    List<Orders> findAllWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.practice.onlineShop.vos.OrderSummaryVO(o.id, o.status, o.totalEur, o.totalUsd, o.totalRon)" +
+            " from Orders o where o.id = :id and o.user.id = :userId")
+    Optional<OrderSummaryVO> findSummaryByIdAndUserId(@Param("id") long id, @Param("userId") long userId);
+
+    @Query("select coalesce(sum(o.totalEur), 0), coalesce(sum(o.totalUsd), 0), coalesce(sum(o.totalRon), 0)" +
+            " from Orders o where o.status in :statuses")
+    List<Object[]> sumTotalsByStatusIn(@Param("statuses") Collection<OrderStatus> statuses);
+
+    @Query("select o.status from Orders o where o.id = :id")
+    Optional<OrderStatus> findStatusById(@Param("id") long id);
+
+    @Query("select i.product.id, sum(i.quantity) from Orders o join o.orderItems i" +
+            " where i.product.id between :from and :to and o.status in :statuses group by i.product.id")
+    List<Object[]> sumQuantitiesByProductIdBetweenAndStatusIn(@Param("from") long from, @Param("to") long to,
+                                                             @Param("statuses") Collection<OrderStatus> statuses);
+
+    @Query("select p.id, p.code, i.quantity from Orders o join o.orderItems i join i.product p where o.id = :id")
+    List<Object[]> findProductIdsCodesAndQuantitiesById(@Param("id") long id);
 }
@@ -1,12 +1,55 @@
 package com.practice.onlineShop.repositories;
 
 import com.practice.onlineShop.entities.Product;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface ProductRepository extends CrudRepository<Product, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface ProductRepository extends CrudRepository<Product, Long>, ProductRepositoryCustom {
     Optional<Product> findByCode(String code);
 
+    List<Product> findAllByCodeIn(Collection<String> codes);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select p from Product p order by p.id")
+    Stream<Product> streamAll();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Product p where p.id in :ids order by p.id")
+    List<Product> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p.stockShards from Product p where p.id = :id")
+    Optional<Integer> findStockShardsByIdForUpdate(@Param("id") long id);
+
+    @Query("select min(p.id), max(p.id) from Product p")
+    List<Object[]> findIdRange();
+
+    @Query("select p.id, p.code, p.stock from Product p where p.id between :from and :to")
+    List<Object[]> findIdsCodesAndStocksByIdBetween(@Param("from") long from, @Param("to") long to);
+
+    @Modifying
+    @Query("update Product p set p.stock = p.stock - :quantity, p.version = p.version + 1 where p.id = :id and p.stock >= :quantity")
+    int decrementStock(@Param("id") long id, @Param("quantity") int quantity);
+
+    @Query("select p.stock from Product p where p.id = :id")
+    int findStockById(@Param("id") long id);
+
+    @Modifying
+    @Query("update Product p set p.stock = p.stock + :quantity, p.version = p.version + 1 where p.id = :id")
+    int incrementStock(@Param("id") long id, @Param("quantity") int quantity);
 
 }
@@ -0,0 +1,15 @@
+package com.practice.onlineShop.repositories;
+
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Currencies;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+    /**
+     * Returns the products with an id greater than {@code after}, in id order, matching every filter that isn't null.
+     */
+    List<Product> findPageAfter(long after, Boolean valid, Currencies currency, Double minPrice, Double maxPrice,
+                                Pageable pageable);
+}
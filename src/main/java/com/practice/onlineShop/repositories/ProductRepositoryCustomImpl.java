@@ -0,0 +1,57 @@
+package com.practice.onlineShop.repositories;
+
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Currencies;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the product page query out of only the filters that are set, so the database sees plain predicates it can
+ * match against the (valid, id) and (currency, id) indexes instead of {@code :filter is null or ...} conditions.
+ */
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    private final EntityManager entityManager;
+
+    @Override
+    public List<Product> findPageAfter(long after, Boolean valid, Currencies currency, Double minPrice, Double maxPrice,
+                                       Pageable pageable) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> criteriaQuery = criteriaBuilder.createQuery(Product.class);
+        Root<Product> product = criteriaQuery.from(Product.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(criteriaBuilder.greaterThan(product.get("id"), after));
+        if (valid != null) {
+            predicates.add(criteriaBuilder.equal(product.get("valid"), valid));
+        }
+        if (currency != null) {
+            predicates.add(criteriaBuilder.equal(product.get("currency"), currency));
+        }
+        if (minPrice != null) {
+            predicates.add(criteriaBuilder.greaterThanOrEqualTo(product.get("price"), minPrice));
+        }
+        if (maxPrice != null) {
+            predicates.add(criteriaBuilder.lessThanOrEqualTo(product.get("price"), maxPrice));
+        }
+        criteriaQuery.select(product)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(criteriaBuilder.asc(product.get("id")));
+
+        TypedQuery<Product> query = entityManager.createQuery(criteriaQuery);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,38 @@
+package com.practice.onlineShop.repositories;
+
+import com.practice.onlineShop.entities.StockShard;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+public interface StockShardRepository extends CrudRepository<StockShard, Long> {
+
+    @Modifying
+    @Query("update StockShard s set s.stock = s.stock - :quantity" +
+            " where s.product.id = :productId and s.shardIndex = :shardIndex and s.stock >= :quantity")
+    int decrementStock(@Param("productId") long productId, @Param("shardIndex") int shardIndex, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("update StockShard s set s.stock = s.stock + :quantity where s.product.id = :productId and s.shardIndex = :shardIndex")
+    int incrementStock(@Param("productId") long productId, @Param("shardIndex") int shardIndex, @Param("quantity") int quantity);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from StockShard s where s.product.id in :productIds order by s.product.id, s.shardIndex")
+    List<StockShard> findAllByProductIdInForUpdate(@Param("productIds") Collection<Long> productIds);
+
+    @Query("select coalesce(sum(s.stock), 0) from StockShard s where s.product.id = :productId")
+    long sumStockByProductId(@Param("productId") long productId);
+
+    @Query("select s.product.id, sum(s.stock) from StockShard s where s.product.id between :from and :to group by s.product.id")
+    List<Object[]> sumStockByProductIdBetween(@Param("from") long from, @Param("to") long to);
+
+    @Modifying
+    @Query("delete from StockShard s where s.product.id = :productId")
+    int deleteByProductId(@Param("productId") long productId);
+}
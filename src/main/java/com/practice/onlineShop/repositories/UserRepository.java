@@ -1,8 +1,19 @@
 package com.practice.onlineShop.repositories;
 
 import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.Roles;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface UserRepository extends CrudRepository<User, Long> {
 
+    @Query("select r from User u join u.roles r where u.id = :userId")
+    List<Roles> findRolesById(@Param("userId") long userId);
+
+    @Query("select u.id, r from User u left join u.roles r where u.id in :userIds")
+    List<Object[]> findIdsAndRolesByIds(@Param("userIds") Collection<Long> userIds);
 }
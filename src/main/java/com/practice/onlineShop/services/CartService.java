@@ -0,0 +1,221 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.cache.StockReservationTable;
+import com.practice.onlineShop.cache.StockReservationTable.Reservation;
+import com.practice.onlineShop.entities.OrderItem;
+import com.practice.onlineShop.entities.Orders;
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.exceptions.*;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.mappers.OrderMapper;
+import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.vos.CartItemVO;
+import com.practice.onlineShop.vos.CartVO;
+import com.practice.onlineShop.vos.OrderVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shopping carts whose lines hold stock for a limited time. The reservations live in the {@link StockReservationTable};
+ * a sweeper moves its timer wheel every tick and releases the lines whose time is up. Checking out turns the
+ * reservations of a cart into an order without checking the stock again.
+ */
+@Service
+public class CartService {
+    private final StockReservationTable stockReservationTable;
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final OrderMapper orderMapper;
+    private final StockService stockService;
+    private final FlashSaleService flashSaleService;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final long tickMillis;
+    private ScheduledExecutorService sweeper;
+
+    public CartService(StockReservationTable stockReservationTable, ProductRepository productRepository,
+                       OrderRepository orderRepository, OrderMapper orderMapper, StockService stockService,
+                       FlashSaleService flashSaleService, ProductCache productCache, EventLogger eventLogger,
+                       @Value("${cart.timer-wheel.tick-millis:1000}") long tickMillis) {
+        this.stockReservationTable = stockReservationTable;
+        this.productRepository = productRepository;
+        this.orderRepository = orderRepository;
+        this.orderMapper = orderMapper;
+        this.stockService = stockService;
+        this.flashSaleService = flashSaleService;
+        this.productCache = productCache;
+        this.eventLogger = eventLogger;
+        this.tickMillis = tickMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread sweeperThread = new Thread(runnable, "cart-reservation-sweeper");
+            sweeperThread.setDaemon(true);
+            return sweeperThread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireReservations, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    @RequiresRole(Roles.CLIENT)
+    public CartVO getCart(@CustomerId Long userId) {
+        return toVO(userId);
+    }
+
+    /**
+     * Sets the quantity of a product in the cart, reserving the difference; a quantity of {@code 0} removes the line.
+     * The product stays locked until the reservation is in the table, so orders taking its stock see it.
+     */
+    @RequiresRole(Roles.CLIENT)
+    @Transactional(rollbackFor = Exception.class)
+    public CartVO setItem(@CustomerId Long userId, CartItemVO cartItemVO) throws InvalidProductsException, InvalidProductIdException, NotEnoughStockException, ProductOnFlashSaleException {
+        if (cartItemVO == null || cartItemVO.getProductId() == null || cartItemVO.getQuantity() == null
+                || cartItemVO.getQuantity() < 0) {
+            throw new InvalidProductsException();
+        }
+        if (cartItemVO.getQuantity() == 0) {
+            return removeItem(userId, cartItemVO.getProductId());
+        }
+
+        long productId = cartItemVO.getProductId();
+        List<Product> products = productRepository.findAllByIdForUpdate(Collections.singleton(productId));
+        if (products.isEmpty()) {
+            throw new InvalidProductIdException(Collections.singleton(productId));
+        }
+        Product product = products.get(0);
+        if (flashSaleService.isActive(productId)) {
+            throw new ProductOnFlashSaleException();
+        }
+        stockService.lockStockShards(Collections.singleton(product));
+
+        int availableStock = stockService.getStock(product) - stockReservationTable.getReserved(productId)
+                + stockReservationTable.getQuantity(userId, productId);
+        if (availableStock < cartItemVO.getQuantity()) {
+            throw new NotEnoughStockException();
+        }
+        stockReservationTable.put(userId, productId, product.getCode(), cartItemVO.getQuantity(), System.nanoTime());
+        productCache.invalidate(product.getCode());
+        eventLogger.log("cart.reserve", "customerId", userId, "productCode", product.getCode(),
+                "quantity", cartItemVO.getQuantity());
+        return toVO(userId);
+    }
+
+    @RequiresRole(Roles.CLIENT)
+    public CartVO removeItem(@CustomerId Long userId, Long productId) {
+        Reservation reservation = productId == null ? null : stockReservationTable.remove(userId, productId);
+        if (reservation != null) {
+            productCache.invalidate(reservation.getProductCode());
+        }
+        return toVO(userId);
+    }
+
+    @RequiresRole(Roles.CLIENT)
+    public void clearCart(@CustomerId Long userId) {
+        stockReservationTable.removeAll(userId).forEach(reservation -> productCache.invalidate(reservation.getProductCode()));
+    }
+
+    /**
+     * Places an order for everything in the cart and returns its id. The reserved quantities are released once the
+     * order commits; if it doesn't, the lines that haven't expired meanwhile go back to the cart.
+     */
+    @RequiresRole(Roles.CLIENT)
+    @Transactional(rollbackFor = Exception.class)
+    public long checkout(@CustomerId Long userId) throws InvalidProductsException, InvalidProductIdException, NotEnoughStockException {
+        eventLogger.log("cart.checkout", "customerId", userId);
+        List<Reservation> reservations = stockReservationTable.detach(userId);
+        if (reservations.isEmpty()) {
+            throw new InvalidProductsException();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    stockReservationTable.settle(reservations);
+                } else {
+                    stockReservationTable.restore(reservations, System.nanoTime());
+                }
+                reservations.forEach(reservation -> productCache.invalidate(reservation.getProductCode()));
+            }
+        });
+
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId(userId.intValue());
+        orderVO.setProductsIdsToQuantity(new HashMap<>());
+        for (Reservation reservation : reservations) {
+            orderVO.getProductsIdsToQuantity().put((int) reservation.getProductId(), reservation.getQuantity());
+        }
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllByIdForUpdate(getProductIds(reservations))) {
+            if (product.getCurrency() != null) {
+                productsById.put(product.getId(), product);
+            }
+        }
+        if (productsById.size() != reservations.size()) {
+            Set<Long> invalidProductIds = new TreeSet<>(getProductIds(reservations));
+            invalidProductIds.removeAll(productsById.keySet());
+            throw new InvalidProductIdException(invalidProductIds);
+        }
+
+        Orders order = orderMapper.toEntity(orderVO, productsById);
+        for (OrderItem orderItem : order.getOrderItems()) {
+            stockService.takeReservedStock(orderItem.getProduct(), orderItem.getQuantity());
+        }
+        orderRepository.save(order);
+        return order.getId();
+    }
+
+    private void expireReservations() {
+        try {
+            List<Reservation> expired = stockReservationTable.expire(System.nanoTime());
+            if (expired.isEmpty()) {
+                return;
+            }
+            expired.forEach(reservation -> productCache.invalidate(reservation.getProductCode()));
+            eventLogger.log("cart.expired", "reservations", expired.size());
+        } catch (RuntimeException exception) {
+            // an exception would cancel the next runs of the sweeper
+            eventLogger.log("cart.expire.failed", "exception", exception.getClass().getSimpleName());
+        }
+    }
+
+    private Set<Long> getProductIds(List<Reservation> reservations) {
+        Set<Long> productIds = new HashSet<>();
+        reservations.forEach(reservation -> productIds.add(reservation.getProductId()));
+        return productIds;
+    }
+
+    private CartVO toVO(long userId) {
+        CartVO cartVO = new CartVO();
+        cartVO.setUserId(userId);
+        for (Reservation reservation : stockReservationTable.getCart(userId)) {
+            CartItemVO cartItemVO = new CartItemVO();
+            cartItemVO.setProductId(reservation.getProductId());
+            cartItemVO.setProductCode(reservation.getProductCode());
+            cartItemVO.setQuantity(reservation.getQuantity());
+            cartItemVO.setExpiresAt(reservation.getExpiresAt());
+            cartVO.getItems().add(cartItemVO);
+        }
+        return cartVO;
+    }
+}
@@ -0,0 +1,206 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.vos.FlashSaleStatsVO;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The waiting room of one product on flash sale. Requests are queued in arrival order and a single allocator thread
+ * hands out units from an in-memory counter, so the counter itself needs no locking. Once the counter reaches zero
+ * new requests are refused before they are queued.
+ */
+class FlashSale {
+    private final long productId;
+    private final String productCode;
+    private final BlockingQueue<Allocation> waitingRoom;
+    private final Queue<Integer> releases = new ConcurrentLinkedQueue<>();
+    private final Thread allocatorThread;
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long remaining;
+    private volatile long remainingSnapshot;
+    private volatile boolean soldOut;
+    private volatile boolean running = true;
+    private boolean closed;
+    private long flushedStock;
+    private long addedStock;
+    private long flushedAddedStock;
+
+    FlashSale(long productId, String productCode, long stock, int waitingRoomSize) {
+        this.productId = productId;
+        this.productCode = productCode;
+        this.remaining = stock;
+        this.remainingSnapshot = stock;
+        this.flushedStock = stock;
+        this.soldOut = stock <= 0;
+        this.waitingRoom = new ArrayBlockingQueue<>(waitingRoomSize);
+        this.allocatorThread = new Thread(this::allocate, "flash-sale-" + productId);
+        this.allocatorThread.setDaemon(true);
+        this.allocatorThread.start();
+    }
+
+    long getProductId() {
+        return productId;
+    }
+
+    String getProductCode() {
+        return productCode;
+    }
+
+    long getRemaining() {
+        return remainingSnapshot;
+    }
+
+    boolean isSoldOut() {
+        return soldOut;
+    }
+
+    long getFlushedStock() {
+        return flushedStock;
+    }
+
+    void setFlushedStock(long flushedStock) {
+        this.flushedStock = flushedStock;
+    }
+
+    /**
+     * Returns the units added to the sale as new stock rather than given back, which are journaled as they come in.
+     */
+    synchronized long getAddedStock() {
+        return addedStock;
+    }
+
+    long getFlushedAddedStock() {
+        return flushedAddedStock;
+    }
+
+    void setFlushedAddedStock(long flushedAddedStock) {
+        this.flushedAddedStock = flushedAddedStock;
+    }
+
+    /**
+     * Returns a future completed with {@code false} right away when the sale is sold out, {@code null} when the waiting
+     * room is full or the sale is over, and otherwise a future completed by the allocator with whether the units were
+     * allocated.
+     */
+    CompletableFuture<Boolean> request(int quantity) {
+        if (!running) {
+            return null;
+        }
+        if (soldOut) {
+            rejected.incrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        }
+        Allocation allocation = new Allocation(quantity);
+        if (!waitingRoom.offer(allocation)) {
+            return null;
+        }
+        return allocation.result;
+    }
+
+    /**
+     * Gives units back to the sale, or adds new ones when {@code added} is set. Returns {@code false} once the sale is
+     * closed, the units then belonging to the database again.
+     */
+    synchronized boolean release(int quantity, boolean added) {
+        if (closed) {
+            return false;
+        }
+        if (added) {
+            addedStock += quantity;
+        }
+        releases.add(quantity);
+        soldOut = false;
+        return true;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the allocator and returns the stock left, including the units released until now.
+     */
+    long close() throws InterruptedException {
+        running = false;
+        allocatorThread.join();
+        synchronized (this) {
+            closed = true;
+            applyReleases();
+            return remaining;
+        }
+    }
+
+    FlashSaleStatsVO getStats() {
+        FlashSaleStatsVO stats = new FlashSaleStatsVO();
+        stats.setProductCode(productCode);
+        stats.setRemainingStock(remainingSnapshot);
+        stats.setWaiting(waitingRoom.size());
+        stats.setAllocated(allocated.get());
+        stats.setRejected(rejected.get());
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+        stats.setAllocationsPerSecond(elapsedSeconds > 0 ? allocated.get() / elapsedSeconds : 0);
+        return stats;
+    }
+
+    private void allocate() {
+        while (running) {
+            applyReleases();
+            Allocation allocation;
+            try {
+                allocation = waitingRoom.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (allocation == null) {
+                continue;
+            }
+            applyReleases();
+            if (remaining >= allocation.quantity) {
+                remaining -= allocation.quantity;
+                // the requester gave up waiting, so the units go back
+                if (allocation.result.complete(true)) {
+                    allocated.addAndGet(allocation.quantity);
+                } else {
+                    remaining += allocation.quantity;
+                }
+            } else {
+                allocation.result.complete(false);
+                rejected.incrementAndGet();
+            }
+            remainingSnapshot = remaining;
+            soldOut = remaining <= 0 && releases.isEmpty();
+        }
+
+        Allocation allocation;
+        while ((allocation = waitingRoom.poll()) != null) {
+            allocation.result.cancel(false);
+        }
+    }
+
+    private void applyReleases() {
+        Integer quantity;
+        boolean released = false;
+        while ((quantity = releases.poll()) != null) {
+            remaining += quantity;
+            released = true;
+        }
+        remainingSnapshot = remaining;
+        if (released) {
+            soldOut = remaining <= 0;
+        }
+    }
+
+    private static class Allocation {
+        private final int quantity;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Allocation(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
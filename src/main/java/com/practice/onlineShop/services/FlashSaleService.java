@@ -0,0 +1,326 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.FlashSaleUnavailableException;
+import com.practice.onlineShop.exceptions.InvalidProductCodeException;
+import com.practice.onlineShop.exceptions.NotEnoughStockException;
+import com.practice.onlineShop.exceptions.StockReservedException;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.vos.FlashSaleStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs flash sales: while a product is on sale its stock lives in the memory of a {@link FlashSale}, which admits the
+ * orders through a bounded waiting room and allocates the units one request at a time. What the stock left changed
+ * since the last flush is written to the locked product every {@code flash-sale.flush-interval-ms} and once more when
+ * the sale is stopped, so orders for a sold out product are refused without touching the database.
+ */
+@Service
+public class FlashSaleService {
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private final ProductRepository productRepository;
+    private final StockService stockService;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final TransactionTemplate transactionTemplate;
+    private final int waitingRoomSize;
+    private final long flushIntervalMillis;
+    private final long allocationTimeoutMillis;
+    private final Map<Long, FlashSale> sales = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flushExecutor;
+
+    public FlashSaleService(ProductRepository productRepository, StockService stockService, ProductCache productCache,
+                            EventLogger eventLogger, PlatformTransactionManager transactionManager,
+                            @Value("${flash-sale.waiting-room-size:10000}") int waitingRoomSize,
+                            @Value("${flash-sale.flush-interval-ms:1000}") long flushIntervalMillis,
+                            @Value("${flash-sale.allocation-timeout-ms:5000}") long allocationTimeoutMillis) {
+        this.productRepository = productRepository;
+        this.stockService = stockService;
+        this.productCache = productCache;
+        this.eventLogger = eventLogger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.waitingRoomSize = waitingRoomSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.allocationTimeoutMillis = allocationTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread flushThread = new Thread(runnable, "flash-sale-flush");
+            flushThread.setDaemon(true);
+            return flushThread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flushExecutor.shutdown();
+        for (Long productId : new ArrayList<>(sales.keySet())) {
+            closeSale(productId);
+        }
+    }
+
+    /**
+     * Puts a product on flash sale, moving its whole stock into the allocator. The product and its stock shards stay
+     * locked while the sale is registered, so an order that missed the sale either finished before or sees it once its
+     * own stock update goes through. A product with stock held in shopping carts can't go on flash sale.
+     */
+    @RequiresRole(Roles.ADMIN)
+    public void startFlashSale(String productCode, @CustomerId Long customerId) throws InvalidProductCodeException, StockReservedException {
+        eventLogger.log("flashSale.start", "customerId", customerId, "productCode", productCode);
+        if (productCode == null) {
+            throw new InvalidProductCodeException();
+        }
+        Integer reservedStock = transactionTemplate.execute(status -> {
+            Optional<Product> productOptional = productRepository.findByCode(productCode);
+            if (!productOptional.isPresent()) {
+                return null;
+            }
+            Product product = productRepository.findAllByIdForUpdate(Collections.singleton(productOptional.get().getId())).get(0);
+            stockService.lockStockShards(Collections.singleton(product));
+            int reserved = stockService.getReservedStock(product.getId());
+            if (reserved == 0) {
+                sales.computeIfAbsent(product.getId(),
+                        productId -> new FlashSale(productId, product.getCode(), stockService.getStock(product), waitingRoomSize));
+            }
+            return reserved;
+        });
+        if (reservedStock == null) {
+            throw new InvalidProductCodeException();
+        }
+        if (reservedStock > 0) {
+            throw new StockReservedException();
+        }
+        productCache.invalidate(productCode);
+    }
+
+    @RequiresRole(Roles.ADMIN)
+    public void stopFlashSale(String productCode, @CustomerId Long customerId) throws InvalidProductCodeException, InterruptedException {
+        eventLogger.log("flashSale.stop", "customerId", customerId, "productCode", productCode);
+        if (productCode == null) {
+            throw new InvalidProductCodeException();
+        }
+        Optional<Product> product = productRepository.findByCode(productCode);
+        if (!product.isPresent()) {
+            throw new InvalidProductCodeException();
+        }
+        closeSale(product.get().getId());
+    }
+
+    public boolean isActive(long productId) {
+        return sales.containsKey(productId);
+    }
+
+    /**
+     * Returns the stock left in the sale of the product, or {@code null} when the product isn't on flash sale.
+     */
+    public Long getRemainingStock(long productId) {
+        FlashSale sale = sales.get(productId);
+        return sale == null ? null : sale.getRemaining();
+    }
+
+    public List<FlashSaleStatsVO> getStats() {
+        List<FlashSaleStatsVO> stats = new ArrayList<>();
+        sales.values().forEach(sale -> stats.add(sale.getStats()));
+        stats.sort(Comparator.comparing(FlashSaleStatsVO::getProductCode));
+        return stats;
+    }
+
+    public void throwExceptionIfSoldOut(Map<Integer, Integer> productsIdsToQuantity) throws NotEnoughStockException {
+        if (productsIdsToQuantity == null || sales.isEmpty()) {
+            return;
+        }
+        for (Integer productId : productsIdsToQuantity.keySet()) {
+            FlashSale sale = productId == null ? null : sales.get(productId.longValue());
+            if (sale != null && sale.isSoldOut()) {
+                throw new NotEnoughStockException();
+            }
+        }
+    }
+
+    /**
+     * Allocates the quantities of the products on flash sale among {@code quantitiesByProductId}, all or nothing, and
+     * returns the quantities allocated by product id. Waiting for the allocators can take up to
+     * {@code flash-sale.allocation-timeout-ms}, so this is called before the transaction of the order starts, and the
+     * caller gives the units back with {@link #release(Map)} if the order isn't placed.
+     */
+    public Map<Long, Integer> allocate(Map<Long, Integer> quantitiesByProductId) throws NotEnoughStockException, FlashSaleUnavailableException {
+        Map<Long, Integer> allocated = new HashMap<>();
+        if (sales.isEmpty()) {
+            return allocated;
+        }
+        try {
+            for (Map.Entry<Long, Integer> quantityByProductId : quantitiesByProductId.entrySet()) {
+                FlashSale sale = sales.get(quantityByProductId.getKey());
+                if (sale != null) {
+                    allocate(sale, quantityByProductId.getValue());
+                    allocated.put(quantityByProductId.getKey(), quantityByProductId.getValue());
+                }
+            }
+        } catch (NotEnoughStockException | FlashSaleUnavailableException exception) {
+            release(allocated);
+            throw exception;
+        }
+        return allocated;
+    }
+
+    /**
+     * Gives back units returned by {@link #allocate(Map)} for an order that wasn't placed.
+     */
+    public void release(Map<Long, Integer> allocated) {
+        allocated.forEach((productId, quantity) -> release(productId, quantity, StockMovementReason.FLASH_SALE));
+    }
+
+    /**
+     * Gives units of a product back once the surrounding transaction commits, to its sale if it still runs, otherwise
+     * to the product row, where the change is journaled with {@code reason}.
+     */
+    public void releaseAfterCommit(long productId, int quantity, StockMovementReason reason) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            release(productId, quantity, reason);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    release(productId, quantity, reason);
+                }
+            }
+        });
+    }
+
+    private void allocate(FlashSale sale, int quantity) throws NotEnoughStockException, FlashSaleUnavailableException {
+        CompletableFuture<Boolean> allocation = sale.request(quantity);
+        if (allocation == null) {
+            throw new FlashSaleUnavailableException();
+        }
+        boolean allocated;
+        try {
+            allocated = allocation.get(allocationTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            // the allocator may have answered in the meantime, otherwise it skips the request
+            if (allocation.cancel(false)) {
+                throw new FlashSaleUnavailableException();
+            }
+            allocated = allocation.join();
+        } catch (CancellationException | ExecutionException exception) {
+            throw new FlashSaleUnavailableException();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            allocation.cancel(false);
+            throw new FlashSaleUnavailableException();
+        }
+        if (!allocated) {
+            throw new NotEnoughStockException();
+        }
+    }
+
+    private void release(long productId, int quantity, StockMovementReason reason) {
+        FlashSale sale = sales.get(productId);
+        if (sale != null && sale.release(quantity, reason.isAdjustment())) {
+            if (reason.isAdjustment()) {
+                stockService.recordMovement(productId, quantity, reason);
+            }
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> stockService.releaseStock(productId, quantity, reason));
+    }
+
+    /**
+     * Stops the allocator, writes the stock left back and only then takes the sale off the product, so orders refused
+     * by the closed sale until then never see a stock that isn't written yet. A sale whose last flush failed stays
+     * registered and is flushed again with the others.
+     */
+    private void closeSale(long productId) throws InterruptedException {
+        FlashSale sale = sales.get(productId);
+        if (sale == null) {
+            return;
+        }
+        long remaining = sale.close();
+        synchronized (flushLock) {
+            if (sales.get(productId) != sale) {
+                return;
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    flush(sale);
+                    break;
+                } catch (OptimisticLockingFailureException exception) {
+                    if (attempt == MAX_FLUSH_ATTEMPTS) {
+                        throw exception;
+                    }
+                }
+            }
+            sales.remove(productId, sale);
+        }
+        productCache.invalidate(sale.getProductCode());
+        eventLogger.log("flashSale.closed", "productCode", sale.getProductCode(), "remaining", remaining,
+                "allocated", sale.getStats().getAllocated());
+    }
+
+    private void flushAll() {
+        synchronized (flushLock) {
+            for (FlashSale sale : sales.values()) {
+                try {
+                    flush(sale);
+                    if (sale.isClosed()) {
+                        sales.remove(sale.getProductId(), sale);
+                        productCache.invalidate(sale.getProductCode());
+                    }
+                } catch (RuntimeException exception) {
+                    eventLogger.log("flashSale.flush.failed", "productCode", sale.getProductCode(), "exception",
+                            exception.getClass().getSimpleName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds what the stock left changed since the last flush to the product, under its lock, so units given back to
+     * the product row once the sale closed are kept. Stock added to the sale was journaled when it came in, so only
+     * the rest of the change, what was ordered and given back, is journaled here. A release counted in one value but
+     * not yet in the other is evened out by the next flush, and closing the sale applies them all.
+     */
+    private void flush(FlashSale sale) {
+        long remaining = sale.getRemaining();
+        long addedStock = sale.getAddedStock();
+        if (remaining == sale.getFlushedStock() && addedStock == sale.getFlushedAddedStock()) {
+            return;
+        }
+        long delta = remaining - sale.getFlushedStock();
+        long journaledDelta = addedStock - sale.getFlushedAddedStock();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Product> products = productRepository.findAllByIdForUpdate(Collections.singleton(sale.getProductId()));
+            if (!products.isEmpty()) {
+                stockService.changeStock(products.get(0), delta, journaledDelta, StockMovementReason.FLASH_SALE);
+            }
+        });
+        sale.setFlushedStock(remaining);
+        sale.setFlushedAddedStock(addedStock);
+        productCache.invalidate(sale.getProductCode());
+    }
+}
@@ -0,0 +1,236 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.enums.OrderIntakeStatus;
+import com.practice.onlineShop.exceptions.InvalidCustomerIdException;
+import com.practice.onlineShop.exceptions.InvalidOrderTokenException;
+import com.practice.onlineShop.exceptions.InvalidProductsException;
+import com.practice.onlineShop.exceptions.OrderBatchTooLargeException;
+import com.practice.onlineShop.exceptions.OrderQueueFullException;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.metrics.MetricsRegistry;
+import com.practice.onlineShop.vos.OrderIntakeStatsVO;
+import com.practice.onlineShop.vos.OrderResultVO;
+import com.practice.onlineShop.vos.OrderTokenVO;
+import com.practice.onlineShop.vos.OrderVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional asynchronous intake for {@code POST /order}. Submitted orders only have their shape checked before being
+ * put on a bounded queue; worker threads drain the queue in micro-batches through {@link OrderService#addOrders(List)}
+ * and record the outcome of every order under the token returned to the client. Each worker drains its own
+ * micro-batch, so with more than one of {@code order.intake.workers} orders competing for the same stock may be placed
+ * in a different order than they were submitted in; a single worker keeps the submission order.
+ */
+@Service
+public class OrderIntakeService {
+    private final OrderService orderService;
+    private final EventLogger eventLogger;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final int maxRetainedStatuses;
+    private final BlockingQueue<PendingOrder> queue;
+    private final Map<String, OrderTokenVO> statuses;
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private volatile boolean running = true;
+
+    public OrderIntakeService(OrderService orderService, EventLogger eventLogger, MetricsRegistry metricsRegistry,
+                              @Value("${order.intake.async.enabled:false}") boolean enabled,
+                              @Value("${order.intake.queue-capacity:10000}") int queueCapacity,
+                              @Value("${order.intake.workers:2}") int workers,
+                              @Value("${order.intake.batch-size:100}") int batchSize,
+                              @Value("${order.intake.max-retained-statuses:100000}") int maxRetainedStatuses,
+                              @Value("${order.batch.max-size:1000}") int maxBatchSize) {
+        if (batchSize > maxBatchSize) {
+            throw new IllegalArgumentException("order.intake.batch-size can't be larger than order.batch.max-size");
+        }
+        this.orderService = orderService;
+        this.eventLogger = eventLogger;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxRetainedStatuses = maxRetainedStatuses;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.statuses = new LinkedHashMap<String, OrderTokenVO>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OrderTokenVO> eldest) {
+                return size() > OrderIntakeService.this.maxRetainedStatuses;
+            }
+        };
+        metricsRegistry.registerGauge("onlineshop_order_intake_queue_depth", "gauge", queue::size);
+        metricsRegistry.registerGauge("onlineshop_order_intake_enqueued_total", "counter", enqueued::get);
+        metricsRegistry.registerGauge("onlineshop_order_intake_drained_total", "counter", drained::get);
+        metricsRegistry.registerGauge("onlineshop_order_intake_refused_total", "counter", refused::get);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < workers; i++) {
+            Thread workerThread = new Thread(this::drain, "order-intake-" + i);
+            workerThread.setDaemon(true);
+            workerThread.start();
+            workerThreads.add(workerThread);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread workerThread : workerThreads) {
+            workerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public OrderTokenVO submit(OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, OrderQueueFullException {
+        validateShape(orderVO);
+
+        String token = UUID.randomUUID().toString();
+        OrderTokenVO queuedStatus = new OrderTokenVO(token, OrderIntakeStatus.QUEUED, null, null);
+        synchronized (statuses) {
+            statuses.put(token, queuedStatus);
+        }
+        if (!queue.offer(new PendingOrder(token, orderVO))) {
+            synchronized (statuses) {
+                statuses.remove(token);
+            }
+            refused.incrementAndGet();
+            throw new OrderQueueFullException();
+        }
+        enqueued.incrementAndGet();
+        return queuedStatus;
+    }
+
+    public OrderTokenVO getStatus(String token) throws InvalidOrderTokenException {
+        OrderTokenVO status;
+        synchronized (statuses) {
+            status = statuses.get(token);
+        }
+        if (status == null) {
+            throw new InvalidOrderTokenException();
+        }
+        return status;
+    }
+
+    public OrderIntakeStatsVO getStats() {
+        OrderIntakeStatsVO stats = new OrderIntakeStatsVO();
+        stats.setEnabled(enabled);
+        stats.setQueueDepth(queue.size());
+        stats.setQueueCapacity(queue.size() + queue.remainingCapacity());
+        stats.setEnqueued(enqueued.get());
+        stats.setDrained(drained.get());
+        stats.setBatches(batches.get());
+        stats.setRefused(refused.get());
+        return stats;
+    }
+
+    private void validateShape(OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException {
+        if (orderVO == null || orderVO.getUserId() == null) {
+            throw new InvalidCustomerIdException();
+        }
+        Map<Integer, Integer> productsIdsToQuantity = orderVO.getProductsIdsToQuantity();
+        if (productsIdsToQuantity == null || productsIdsToQuantity.isEmpty()) {
+            throw new InvalidProductsException();
+        }
+        for (Map.Entry<Integer, Integer> productIdToQuantity : productsIdsToQuantity.entrySet()) {
+            if (productIdToQuantity.getKey() == null || productIdToQuantity.getValue() == null
+                    || productIdToQuantity.getValue() <= 0) {
+                throw new InvalidProductsException();
+            }
+        }
+    }
+
+    private void drain() {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<PendingOrder> batch) {
+        List<OrderTokenVO> outcomes = new ArrayList<>(batch.size());
+        try {
+            outcomes.addAll(addOrders(batch));
+        } catch (Exception exception) {
+            eventLogger.log("order.intake.batch.failed", "orders", batch.size(), "exception",
+                    exception.getClass().getSimpleName());
+            // one bad order shouldn't reject the others that shared its transaction
+            for (PendingOrder pendingOrder : batch) {
+                outcomes.add(batch.size() == 1 ? rejected(pendingOrder, exception) : retry(pendingOrder));
+            }
+        }
+
+        synchronized (statuses) {
+            outcomes.forEach(outcome -> statuses.put(outcome.getToken(), outcome));
+        }
+        drained.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    private OrderTokenVO retry(PendingOrder pendingOrder) {
+        try {
+            return addOrders(Collections.singletonList(pendingOrder)).get(0);
+        } catch (Exception exception) {
+            return rejected(pendingOrder, exception);
+        }
+    }
+
+    private List<OrderTokenVO> addOrders(List<PendingOrder> batch) throws OrderBatchTooLargeException {
+        List<OrderVO> orderVOs = new ArrayList<>(batch.size());
+        batch.forEach(pendingOrder -> orderVOs.add(pendingOrder.orderVO));
+
+        List<OrderTokenVO> outcomes = new ArrayList<>(batch.size());
+        for (OrderResultVO result : orderService.addOrders(orderVOs)) {
+            String token = batch.get(result.getIndex()).token;
+            OrderIntakeStatus status = result.isAccepted() ? OrderIntakeStatus.ACCEPTED : OrderIntakeStatus.REJECTED;
+            outcomes.add(new OrderTokenVO(token, status, result.getOrderId(), result.getError()));
+        }
+        return outcomes;
+    }
+
+    private static OrderTokenVO rejected(PendingOrder pendingOrder, Exception exception) {
+        return new OrderTokenVO(pendingOrder.token, OrderIntakeStatus.REJECTED, null, exception.getClass().getSimpleName());
+    }
+
+    private static class PendingOrder {
+        private final String token;
+        private final OrderVO orderVO;
+
+        private PendingOrder(String token, OrderVO orderVO) {
+            this.token = token;
+            this.orderVO = orderVO;
+        }
+    }
+}
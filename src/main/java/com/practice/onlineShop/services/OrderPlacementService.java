@@ -0,0 +1,204 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.aspects.SecuredMethod;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.entities.OrderItem;
+import com.practice.onlineShop.entities.Orders;
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.StockShard;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.*;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.mappers.OrderMapper;
+import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.vos.OrderResultVO;
+import com.practice.onlineShop.vos.OrderVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * The transactions that place orders for {@link OrderService}, which allocates the units of the products on flash
+ * sale before calling them, so no connection or row lock is held while an allocator is waited for.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderPlacementService {
+    private final OrderRepository orderRepository;
+    private final OrderMapper orderMapper;
+    private final StockService stockService;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final ProductRepository productRepository;
+    private final FlashSaleService flashSaleService;
+
+    /**
+     * Places an order whose units of the products in {@code flashSaleProductIds} were already allocated by their sales.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void placeOrder(OrderVO orderVO, Set<Long> flashSaleProductIds) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException, NotEnoughStockException, FlashSaleUnavailableException {
+        Orders order = orderMapper.toEntity(orderVO);
+        // the rows are locked in the order of their ids, so two orders for the same products can't deadlock
+        List<OrderItem> orderItems = new ArrayList<>(order.getOrderItems());
+        orderItems.sort(Comparator.comparingLong(orderItem -> orderItem.getProduct().getId()));
+        for (OrderItem orderItem : orderItems) {
+            Product product = orderItem.getProduct();
+            if (flashSaleProductIds.contains(product.getId())) {
+                continue;
+            }
+            stockService.reserveStock(product, orderItem.getQuantity());
+            // a sale started while this order waited for the stock of the product, which now belongs to the sale
+            if (flashSaleService.isActive(product.getId())) {
+                throw new FlashSaleUnavailableException();
+            }
+        }
+
+        orderRepository.save(order);
+        order.getOrderItems().forEach(orderItem -> productCache.invalidate(orderItem.getProduct().getCode()));
+    }
+
+    /**
+     * Places many orders in one transaction. The products of the whole batch are loaded with one query, locked so the
+     * stock can be checked and decremented in memory, in submission order. Every order is accepted or rejected on its
+     * own; a rejected order doesn't change the stock. {@code allocations} holds the units each order got from flash
+     * sales, and {@code allocationFailures} the exception its allocation failed with, if it did.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<OrderResultVO> placeOrders(List<OrderVO> orderVOs, Map<Long, Integer> rolesMasksByUserId,
+                                           SecuredMethod addOrderMethod, List<Map<Long, Integer>> allocations,
+                                           List<Exception> allocationFailures) {
+        Set<Long> productIds = new HashSet<>();
+        for (OrderVO orderVO : orderVOs) {
+            if (orderVO != null && orderVO.getProductsIdsToQuantity() != null) {
+                orderVO.getProductsIdsToQuantity().keySet().forEach(productId -> productIds.add(productId.longValue()));
+            }
+        }
+        Map<Long, Product> productsById = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (Product product : productRepository.findAllByIdForUpdate(productIds)) {
+                productsById.put(product.getId(), product);
+            }
+        }
+
+        Map<Long, List<StockShard>> stockShardsByProductId = stockService.lockStockShards(productsById.values());
+        Map<Long, Integer> availableStockByProductId = new HashMap<>();
+        for (Product product : productsById.values()) {
+            List<StockShard> stockShards = stockShardsByProductId.get(product.getId());
+            // the stock of a product on flash sale is checked by its allocator
+            availableStockByProductId.put(product.getId(), flashSaleService.isActive(product.getId()) ? Integer.MAX_VALUE
+                    : product.getStock() + (stockShards == null ? 0 : StockService.sumStock(stockShards))
+                    - stockService.getReservedStock(product.getId()));
+        }
+
+        List<OrderResultVO> results = new ArrayList<>(orderVOs.size());
+        List<Orders> acceptedOrders = new ArrayList<>();
+        for (int i = 0; i < orderVOs.size(); i++) {
+            OrderVO orderVO = orderVOs.get(i);
+            OrderResultVO result = new OrderResultVO();
+            result.setIndex(i);
+            try {
+                checkBatchOrder(orderVO, addOrderMethod, rolesMasksByUserId, productsById, availableStockByProductId);
+                throwIfAllocationFailed(allocationFailures.get(i));
+                Set<Long> flashSaleProductIds = allocations.get(i).keySet();
+                Orders order = orderMapper.toEntity(orderVO, productsById);
+                // a sale started after the units of this order were allocated, and the stock now belongs to it
+                for (OrderItem orderItem : order.getOrderItems()) {
+                    long productId = orderItem.getProduct().getId();
+                    if (!flashSaleProductIds.contains(productId) && flashSaleService.isActive(productId)) {
+                        throw new FlashSaleUnavailableException();
+                    }
+                }
+                for (OrderItem orderItem : order.getOrderItems()) {
+                    Product product = orderItem.getProduct();
+                    if (flashSaleProductIds.contains(product.getId())) {
+                        continue;
+                    }
+                    availableStockByProductId.merge(product.getId(), -orderItem.getQuantity(), Integer::sum);
+                    List<StockShard> stockShards = stockShardsByProductId.get(product.getId());
+                    if (stockShards == null) {
+                        product.setStock(product.getStock() - orderItem.getQuantity());
+                    } else {
+                        StockService.take(stockShards, orderItem.getQuantity());
+                    }
+                    stockService.recordMovement(product.getId(), -orderItem.getQuantity(), StockMovementReason.ORDER_PLACED);
+                }
+                acceptedOrders.add(order);
+                result.setAccepted(true);
+            } catch (InvalidCustomerIdException | InvalidOperationException | InvalidProductsException
+                     | InvalidProductIdException | NotEnoughStockException | FlashSaleUnavailableException exception) {
+                result.setError(exception.getClass().getSimpleName());
+            }
+            results.add(result);
+        }
+
+        orderRepository.saveAll(acceptedOrders);
+        int acceptedOrderIndex = 0;
+        for (OrderResultVO result : results) {
+            if (result.isAccepted()) {
+                result.setOrderId(acceptedOrders.get(acceptedOrderIndex++).getId());
+            }
+        }
+        productsById.values().forEach(product -> productCache.invalidate(product.getCode()));
+        eventLogger.log("order.batch", "orders", orderVOs.size(), "accepted", acceptedOrders.size(),
+                "rejected", orderVOs.size() - acceptedOrders.size());
+        return results;
+    }
+
+    private static void throwIfAllocationFailed(Exception allocationFailure) throws NotEnoughStockException, FlashSaleUnavailableException {
+        if (allocationFailure instanceof NotEnoughStockException) {
+            throw (NotEnoughStockException) allocationFailure;
+        }
+        if (allocationFailure instanceof FlashSaleUnavailableException) {
+            throw (FlashSaleUnavailableException) allocationFailure;
+        }
+    }
+
+    private void checkBatchOrder(OrderVO orderVO, SecuredMethod addOrderMethod, Map<Long, Integer> rolesMasksByUserId,
+                                 Map<Long, Product> productsById, Map<Long, Integer> availableStockByProductId)
+            throws InvalidCustomerIdException, InvalidOperationException, InvalidProductsException, InvalidProductIdException,
+            NotEnoughStockException {
+        if (orderVO == null || orderVO.getUserId() == null) {
+            throw new InvalidCustomerIdException();
+        }
+        Integer rolesMask = rolesMasksByUserId.get(orderVO.getUserId().longValue());
+        if (rolesMask == null) {
+            throw new InvalidCustomerIdException();
+        }
+        if (!addOrderMethod.isAllowed(rolesMask)) {
+            throw new InvalidOperationException();
+        }
+
+        Map<Integer, Integer> productsIdsToQuantity = orderVO.getProductsIdsToQuantity();
+        if (productsIdsToQuantity == null || productsIdsToQuantity.isEmpty()) {
+            throw new InvalidProductsException();
+        }
+        Set<Long> invalidProductIds = new TreeSet<>();
+        for (Map.Entry<Integer, Integer> productIdToQuantity : productsIdsToQuantity.entrySet()) {
+            Integer quantity = productIdToQuantity.getValue();
+            if (quantity == null || quantity <= 0) {
+                throw new InvalidProductsException();
+            }
+            long productId = productIdToQuantity.getKey().longValue();
+            Product product = productsById.get(productId);
+            if (product == null || product.getCurrency() == null) {
+                invalidProductIds.add(productId);
+            } else if (availableStockByProductId.get(productId) < quantity) {
+                throw new NotEnoughStockException();
+            }
+        }
+        if (!invalidProductIds.isEmpty()) {
+            throw new InvalidProductIdException(invalidProductIds);
+        }
+    }
+
+    private Map<Long, Integer> getQuantitiesByProductId(Orders order) {
+        Map<Long, Integer> quantitiesByProductId = new HashMap<>();
+        for (OrderItem orderItem : order.getOrderItems()) {
+            quantitiesByProductId.merge(orderItem.getProduct().getId(), orderItem.getQuantity(), Integer::sum);
+        }
+        return quantitiesByProductId;
+    }
+}
@@ -1,88 +1,293 @@
 package com.practice.onlineShop.services;
 
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.aspects.SecuredMethod;
+import com.practice.onlineShop.aspects.SecuredMethodRegistry;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.cache.UserRolesCache;
 import com.practice.onlineShop.entities.Orders;
-import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.enums.StockMovementReason;
 import com.practice.onlineShop.exceptions.*;
+import com.practice.onlineShop.logging.EventLogger;
 import com.practice.onlineShop.mappers.OrderMapper;
 import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.vos.BulkDeliveryResultVO;
+import com.practice.onlineShop.vos.OrderHistoryVO;
+import com.practice.onlineShop.vos.OrderResultVO;
+import com.practice.onlineShop.vos.OrderSummaryVO;
 import com.practice.onlineShop.vos.OrderVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ReflectionUtils;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.lang.reflect.Method;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    private static final Method ADD_ORDER_METHOD = ReflectionUtils.findMethod(OrderService.class, "addOrder", OrderVO.class);
+
     private final OrderRepository orderRepository;
     private final OrderMapper orderMapper;
     private final StockService stockService;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final UserRolesCache userRolesCache;
+    private final FlashSaleService flashSaleService;
+    private final SecuredMethodRegistry securedMethodRegistry;
+    private final OrderPlacementService orderPlacementService;
+
+    @Value("${order.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    /**
+     * Places an order. The units of the products on flash sale are allocated before the transaction starts, so waiting
+     * for their allocators holds neither a connection nor a row lock, and are given back if the order isn't placed.
+     */
+    @RequiresRole(Roles.CLIENT)
+    public void addOrder(@CustomerId OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException, NotEnoughStockException, FlashSaleUnavailableException {
+        flashSaleService.throwExceptionIfSoldOut(orderVO.getProductsIdsToQuantity());
+
+        Map<Long, Integer> allocated = flashSaleService.allocate(getQuantitiesByProductId(orderVO));
+        boolean placed = false;
+        try {
+            orderPlacementService.placeOrder(orderVO, allocated.keySet());
+            placed = true;
+        } finally {
+            if (!placed) {
+                flashSaleService.release(allocated);
+            }
+        }
+    }
+
+    /**
+     * Places many orders in one transaction, see {@link OrderPlacementService#placeOrders}. The roles of the users are
+     * read and the units of the products on flash sale allocated before the transaction starts; the units of the
+     * orders that end up rejected are given back.
+     */
+    public List<OrderResultVO> addOrders(List<OrderVO> orderVOs) throws OrderBatchTooLargeException {
+        if (orderVOs == null || orderVOs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (orderVOs.size() > maxBatchSize) {
+            throw new OrderBatchTooLargeException();
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        for (OrderVO orderVO : orderVOs) {
+            if (orderVO != null && orderVO.getUserId() != null) {
+                userIds.add(orderVO.getUserId().longValue());
+            }
+        }
+        Map<Long, Integer> rolesMasksByUserId = userRolesCache.getRolesMasks(userIds);
+        // every order of the batch needs the roles a single order needs
+        SecuredMethod addOrderMethod = securedMethodRegistry.get(ADD_ORDER_METHOD);
+
+        List<Map<Long, Integer>> allocations = new ArrayList<>(orderVOs.size());
+        List<Exception> allocationFailures = new ArrayList<>(orderVOs.size());
+        for (OrderVO orderVO : orderVOs) {
+            Map<Long, Integer> allocated = Collections.emptyMap();
+            Exception allocationFailure = null;
+            Integer rolesMask = orderVO == null || orderVO.getUserId() == null ? null
+                    : rolesMasksByUserId.get(orderVO.getUserId().longValue());
+            // an order the transaction rejects anyway doesn't take units from a sale
+            if (rolesMask != null && addOrderMethod.isAllowed(rolesMask)) {
+                try {
+                    allocated = flashSaleService.allocate(getQuantitiesByProductId(orderVO));
+                } catch (NotEnoughStockException | FlashSaleUnavailableException exception) {
+                    allocationFailure = exception;
+                }
+            }
+            allocations.add(allocated);
+            allocationFailures.add(allocationFailure);
+        }
+
+        List<OrderResultVO> results = null;
+        try {
+            results = orderPlacementService.placeOrders(orderVOs, rolesMasksByUserId, addOrderMethod, allocations,
+                    allocationFailures);
+        } finally {
+            for (int i = 0; i < allocations.size(); i++) {
+                if (results == null || !results.get(i).isAccepted()) {
+                    flashSaleService.release(allocations.get(i));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the next page of orders of a user, after the order id {@code after}. The ids of the page are selected
+     * first, then the orders are loaded with their items and products in one query, so a page always costs two queries.
+     */
+    @RequiresRole(Roles.CLIENT)
+    @Transactional(readOnly = true)
+    public List<OrderHistoryVO> getOrders(@CustomerId Long userId, Long after, Integer limit, OrderStatus status) {
+        long lastSeenId = after == null ? 0 : after;
+        List<Long> orderIds = orderRepository.findIdPageByUserIdAfter(userId, lastSeenId, status,
+                PageRequest.of(0, getPageSize(limit)));
+        if (orderIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Orders> orders = orderRepository.findAllWithItemsByIdIn(orderIds);
+        List<OrderHistoryVO> orderHistory = new ArrayList<>(orders.size());
+        for (Orders order : orders) {
+            orderHistory.add(orderMapper.toHistoryVO(order));
+        }
+        return orderHistory;
+    }
 
-    public void addOrder(OrderVO orderVO) throws InvalidCustomerIdException, InvalidProductsException, InvalidProductIdException, NotEnoughStockException {
-        validateStock(orderVO);
-        Orders order = orderMapper.toEntity(orderVO);
-        order.getOrderItems().forEach(orderItem -> {
-            int oldProductStock = orderItem.getProduct().getStock();
-            int productId = (int) orderItem.getProduct().getId();
-            int sellStock = orderVO.getProductsIdsToQuantity().get(productId);
-            orderItem.getProduct().setStock(oldProductStock - sellStock);
-        });
-
-        orderRepository.save(order);
+    @RequiresRole(Roles.CLIENT)
+    public OrderSummaryVO getOrderSummary(Integer orderId, @CustomerId Long customerId) throws InvalidOrderIdException {
+        throwExceptionIfOrderIdIsAbsent(orderId);
+        // the order of another customer is reported as missing, like one that doesn't exist
+        Optional<OrderSummaryVO> orderSummary = orderRepository.findSummaryByIdAndUserId(orderId, customerId);
+        if (!orderSummary.isPresent()) {
+            throw new InvalidOrderIdException();
+        }
+        return orderSummary.get();
     }
 
+    /**
+     * Sums the totals of the orders that were neither canceled nor returned, straight from the order rows.
+     */
+    @RequiresRole(Roles.ADMIN)
+    public Map<Currencies, Double> getRevenue(@CustomerId Long customerId) {
+        Object[] totals = orderRepository.sumTotalsByStatusIn(EnumSet.of(OrderStatus.PLACED, OrderStatus.DELIVERED)).get(0);
+        return OrderMapper.toTotals((Double) totals[0], (Double) totals[1], (Double) totals[2]);
+    }
+
+    @RequiresRole(Roles.EXPEDITOR)
     @Transactional
-    public void deliver(Integer orderId, Long customerId) throws InvalidOrderIdException, OrderCanceledException {
-        System.out.println("Customer-ul cu id-ul: " + customerId + " este in service");
+    public void deliver(Integer orderId, @CustomerId Long customerId) throws InvalidOrderIdException, OrderCanceledException {
+        eventLogger.log("order.deliver", "customerId", customerId, "orderId", orderId);
 
         throwExceptionIfOrderIdIsAbsent(orderId);
 
-        Orders order = getOrderOrThrowException(orderId);
-        if(order.isCanceled()){
+        OrderStatus currentStatus = changeStatus(orderId, OrderStatus.DELIVERED);
+        if (currentStatus == OrderStatus.CANCELED) {
             throw new OrderCanceledException();
         }
+    }
+
+    /**
+     * Delivers all the placed orders among {@code orderIds} with one set-based update. Canceled and unknown orders are
+     * skipped and reported; orders that were already delivered are left as they are.
+     */
+    @RequiresRole(Roles.EXPEDITOR)
+    @Transactional
+    public BulkDeliveryResultVO deliverOrders(List<Long> orderIds, @CustomerId Long customerId) throws OrderBatchTooLargeException {
+        BulkDeliveryResultVO result = new BulkDeliveryResultVO();
+        if (orderIds == null || orderIds.isEmpty()) {
+            return result;
+        }
+        Set<Long> distinctOrderIds = new TreeSet<>();
+        orderIds.stream().filter(Objects::nonNull).forEach(distinctOrderIds::add);
+        if (distinctOrderIds.size() > maxBatchSize) {
+            throw new OrderBatchTooLargeException();
+        }
 
-        order.setDelivered(true);
-        // orderRepository.save(order); // without @Transactional
+        result.setDelivered(orderRepository.updateStatuses(distinctOrderIds, OrderStatus.DELIVERED,
+                OrderStatus.DELIVERED.getAllowedSources()));
+        Set<Long> unknownOrderIds = new TreeSet<>(distinctOrderIds);
+        for (Object[] orderIdAndStatus : orderRepository.findIdsAndStatusesByIds(distinctOrderIds)) {
+            unknownOrderIds.remove((Long) orderIdAndStatus[0]);
+            if (orderIdAndStatus[1] == OrderStatus.CANCELED) {
+                result.getCanceledOrderIds().add((Long) orderIdAndStatus[0]);
+            }
+        }
+        Collections.sort(result.getCanceledOrderIds());
+        result.getUnknownOrderIds().addAll(unknownOrderIds);
+
+        eventLogger.log("order.deliver.bulk", "customerId", customerId, "orders", distinctOrderIds.size(),
+                "delivered", result.getDelivered());
+        return result;
     }
 
+    @RequiresRole(Roles.CLIENT)
     @Transactional
-    public void cancelOrder(Integer orderId, Long customerId) throws InvalidOrderIdException, OrderAlreadyDeliveredException {
-        System.out.println("Customer-ul cu id-ul: " + customerId + " este in service pentru a anula comanda " + orderId);
+    public void cancelOrder(Integer orderId, @CustomerId Long customerId) throws InvalidOrderIdException, OrderAlreadyDeliveredException {
+        eventLogger.log("order.cancel", "customerId", customerId, "orderId", orderId);
 
         throwExceptionIfOrderIdIsAbsent(orderId);
 
-        Orders order = getOrderOrThrowException(orderId);
-        if (order.isDelivered()){
+        OrderStatus currentStatus = changeStatus(orderId, OrderStatus.CANCELED);
+        if (currentStatus == OrderStatus.DELIVERED || currentStatus == OrderStatus.RETURNED) {
             throw new OrderAlreadyDeliveredException();
         }
-
-        order.setCanceled(true);
+        if (currentStatus == null) {
+            releaseOrderedStock(orderId, StockMovementReason.ORDER_CANCELED);
+        }
     }
 
+    @RequiresRole(Roles.CLIENT)
     @Transactional
-    public void returnOrder(Integer orderId, Long customerId) throws InvalidOrderIdException, OrderNotDeliveredYetException, OrderCanceledException {
-        System.out.println("Customer-ul cu id-ul: " + customerId + " este in service pentru a returna comanda " + orderId);
+    public void returnOrder(Integer orderId, @CustomerId Long customerId) throws InvalidOrderIdException, OrderNotDeliveredYetException, OrderCanceledException {
+        eventLogger.log("order.return", "customerId", customerId, "orderId", orderId);
 
         throwExceptionIfOrderIdIsAbsent(orderId);
-        Orders order = getOrderOrThrowException(orderId);
 
-        if (!order.isDelivered()){
+        OrderStatus currentStatus = changeStatus(orderId, OrderStatus.RETURNED);
+        if (currentStatus == OrderStatus.PLACED) {
             throw new OrderNotDeliveredYetException();
         }
-        if (order.isCanceled()){
+        if (currentStatus == OrderStatus.CANCELED) {
             throw new OrderCanceledException();
         }
+        if (currentStatus == null) {
+            releaseOrderedStock(orderId, StockMovementReason.ORDER_RETURNED);
+        }
+    }
 
-        order.setReturned(true);
-        order.getOrderItems().forEach(orderItem -> {
-            Product product = orderItem.getProduct();
-            int oldStock = product.getStock();
-            product.setStock(oldStock + orderItem.getQuantity());
-        });
+    /**
+     * Gives the stock taken by the items of an order back to their products, or to their flash sales.
+     */
+    private void releaseOrderedStock(Integer orderId, StockMovementReason reason) {
+        for (Object[] orderItem : orderRepository.findProductIdsCodesAndQuantitiesById(orderId)) {
+            if (flashSaleService.isActive((Long) orderItem[0])) {
+                flashSaleService.releaseAfterCommit((Long) orderItem[0], (Integer) orderItem[2], reason);
+            } else {
+                stockService.releaseStock((Long) orderItem[0], (Integer) orderItem[2], reason);
+            }
+            productCache.invalidate((String) orderItem[1]);
+        }
+    }
+
+    /**
+     * Returns the quantities of a valid order by product id, or nothing when the order is malformed, which its
+     * transaction then rejects.
+     */
+    private static Map<Long, Integer> getQuantitiesByProductId(OrderVO orderVO) {
+        Map<Long, Integer> quantitiesByProductId = new HashMap<>();
+        if (orderVO == null || orderVO.getProductsIdsToQuantity() == null) {
+            return quantitiesByProductId;
+        }
+        for (Map.Entry<Integer, Integer> productIdToQuantity : orderVO.getProductsIdsToQuantity().entrySet()) {
+            Integer quantity = productIdToQuantity.getValue();
+            if (productIdToQuantity.getKey() == null || quantity == null || quantity <= 0) {
+                return new HashMap<>();
+            }
+            quantitiesByProductId.put(productIdToQuantity.getKey().longValue(), quantity);
+        }
+        return quantitiesByProductId;
+    }
+
+    private int getPageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     private void throwExceptionIfOrderIdIsAbsent(Integer orderId) throws InvalidOrderIdException {
@@ -91,23 +296,19 @@ public class OrderService {
         }
     }
 
-    private void validateStock(OrderVO orderVO) throws NotEnoughStockException {
-        Map<Integer, Integer> productsIdsToQuantityMap = orderVO.getProductsIdsToQuantity();
-        Set<Integer> productIds = productsIdsToQuantityMap.keySet();
-        for (Integer productId : productIds){
-            Integer quantity = productsIdsToQuantityMap.get(productId);
-            boolean havingEnoughStock = stockService.isHavingEnoughStock(productId, quantity);
-            if (!havingEnoughStock) {
-                throw new NotEnoughStockException();
-            }
+    /**
+     * Moves the order to {@code target} with a single guarded update. Returns {@code null} when the status was changed,
+     * otherwise the status that kept the order from moving, which is {@code target} itself if the order is already there.
+     */
+    private OrderStatus changeStatus(Integer orderId, OrderStatus target) throws InvalidOrderIdException {
+        int updatedRows = orderRepository.updateStatus(orderId, target, target.getAllowedSources());
+        if (updatedRows == 1) {
+            return null;
         }
-    }
-
-    private Orders getOrderOrThrowException(Integer orderId) throws InvalidOrderIdException {
-        Optional<Orders> ordersOptional = orderRepository.findById(orderId.longValue());
-        if (!ordersOptional.isPresent()) {
+        Optional<OrderStatus> currentStatus = orderRepository.findStatusById(orderId);
+        if (!currentStatus.isPresent()) {
             throw new InvalidOrderIdException();
         }
-        return ordersOptional.get();
+        return currentStatus.get();
     }
 }
@@ -0,0 +1,426 @@
+package com.practice.onlineShop.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.InvalidImportFileException;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.mappers.ProductMapper;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.vos.ProductImportErrorVO;
+import com.practice.onlineShop.vos.ProductImportReportVO;
+import com.practice.onlineShop.vos.ProductVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Imports a JSON array or a CSV file of products, reading it row by row and upserting by code in transactions of
+ * {@code product.import.batch-size} rows, so memory use doesn't depend on the size of the file. A batch that can't be
+ * saved is saved again row by row, so only the rows that fail are reported. Columns a row doesn't have are left as they
+ * are on existing products.
+ */
+@Service
+public class ProductImportService {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final ProductRepository productRepository;
+    private final ProductMapper productMapper;
+    private final ProductCache productCache;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final EventLogger eventLogger;
+    private final StockService stockService;
+    private final FlashSaleService flashSaleService;
+    private final int batchSize;
+
+    public ProductImportService(ProductRepository productRepository, ProductMapper productMapper, ProductCache productCache,
+                                ObjectMapper objectMapper, EntityManager entityManager,
+                                TransactionTemplate transactionTemplate, EventLogger eventLogger, StockService stockService,
+                                FlashSaleService flashSaleService, @Value("${product.import.batch-size:500}") int batchSize) {
+        this.productRepository = productRepository;
+        this.productMapper = productMapper;
+        this.productCache = productCache;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.eventLogger = eventLogger;
+        this.stockService = stockService;
+        this.flashSaleService = flashSaleService;
+        this.batchSize = batchSize;
+    }
+
+    @RequiresRole(Roles.ADMIN)
+    public ProductImportReportVO importProducts(InputStream inputStream, String contentType, @CustomerId Long customerId)
+            throws InvalidImportFileException {
+        eventLogger.log("product.import.start", "customerId", customerId, "contentType", contentType);
+        ProductImportReportVO report = new ProductImportReportVO();
+        Map<String, ImportRow> batch = new LinkedHashMap<>();
+
+        RowReader rowReader = createRowReader(inputStream, contentType);
+        ImportRow row;
+        while ((row = readRow(rowReader, report)) != null) {
+            String validationError = row.error != null ? row.error : validate(row.product);
+            if (validationError != null) {
+                addError(report, row, validationError);
+                continue;
+            }
+            // a code repeated in the same batch is saved once, with the values of its last row
+            batch.remove(row.product.getCode());
+            batch.put(row.product.getCode(), row);
+            if (batch.size() >= batchSize) {
+                saveBatch(batch, report);
+            }
+        }
+        saveBatch(batch, report);
+
+        eventLogger.log("product.import.end", "created", report.getCreated(), "updated", report.getUpdated(),
+                "failed", report.getFailed());
+        return report;
+    }
+
+    private RowReader createRowReader(InputStream inputStream, String contentType) throws InvalidImportFileException {
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return new JsonRowReader(inputStream);
+            }
+            if (mediaType.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))) {
+                return new CsvRowReader(inputStream);
+            }
+        } catch (IOException | IllegalArgumentException exception) {
+            throw new InvalidImportFileException();
+        }
+        throw new InvalidImportFileException();
+    }
+
+    private ImportRow readRow(RowReader rowReader, ProductImportReportVO report) {
+        try {
+            return rowReader.next();
+        } catch (IOException exception) {
+            // the rest of the file can't be parsed reliably, so the import stops at this row
+            ImportRow row = new ImportRow(rowReader.getRowNumber(), null, Collections.emptySet());
+            addError(report, row, "Randul nu a putut fi citit: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    private String validate(ProductVO productVO) {
+        if (productVO.getCode() == null || productVO.getCode().trim().isEmpty()) {
+            return "Codul produsului lipseste";
+        }
+        if (productVO.getPrice() < 0) {
+            return "Pretul nu poate fi negativ";
+        }
+        if (productVO.getStock() < 0) {
+            return "Stocul nu poate fi negativ";
+        }
+        if (productVO.getCurrency() == null) {
+            return "Moneda lipseste";
+        }
+        return null;
+    }
+
+    private void saveBatch(Map<String, ImportRow> batch, ProductImportReportVO report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ImportRow> stockIgnoredRows = new ArrayList<>();
+        try {
+            int created = transactionTemplate.execute(status -> upsert(batch.values(), stockIgnoredRows));
+            report.setCreated(report.getCreated() + created);
+            report.setUpdated(report.getUpdated() + batch.size() - created);
+            stockIgnoredRows.forEach(row -> addStockIgnored(report, row));
+        } catch (RuntimeException exception) {
+            entityManager.clear();
+            // a product inserted by someone else in the meantime is updated once the row is saved on its own
+            for (ImportRow row : batch.values()) {
+                saveRow(row, report);
+            }
+        }
+        batch.clear();
+    }
+
+    private void saveRow(ImportRow row, ProductImportReportVO report) {
+        List<ImportRow> stockIgnoredRows = new ArrayList<>();
+        try {
+            int created = transactionTemplate.execute(status -> upsert(Collections.singleton(row), stockIgnoredRows));
+            report.setCreated(report.getCreated() + created);
+            report.setUpdated(report.getUpdated() + 1 - created);
+            stockIgnoredRows.forEach(stockIgnoredRow -> addStockIgnored(report, stockIgnoredRow));
+        } catch (RuntimeException exception) {
+            entityManager.clear();
+            addError(report, row, "Randul nu a putut fi salvat: " + exception.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Saves {@code rows} and returns how many products were created. Rows whose stock was left alone because their
+     * product is on flash sale are added to {@code stockIgnoredRows}.
+     */
+    private int upsert(Collection<ImportRow> rows, List<ImportRow> stockIgnoredRows) {
+        Set<String> codes = new HashSet<>();
+        rows.forEach(row -> codes.add(row.product.getCode()));
+        Map<String, Product> existingProducts = new HashMap<>();
+        for (Product product : productRepository.findAllByCodeIn(codes)) {
+            existingProducts.put(product.getCode(), product);
+        }
+
+        List<Product> products = new ArrayList<>(rows.size());
+        List<Product> createdProducts = new ArrayList<>();
+        int created = 0;
+        for (ImportRow row : rows) {
+            Product product = existingProducts.get(row.product.getCode());
+            if (product == null) {
+                product = productMapper.toEntity(row.product);
+                product.setId(0);
+                createdProducts.add(product);
+                created++;
+            } else {
+                if (row.has("description")) {
+                    product.setDescription(row.product.getDescription());
+                }
+                if (row.has("price")) {
+                    product.setPrice(row.product.getPrice());
+                }
+                // the stock of a product on flash sale is kept by the sale until it is stopped
+                if (row.has("stock") && flashSaleService.isActive(product.getId())) {
+                    stockIgnoredRows.add(row);
+                } else if (row.has("stock")) {
+                    stockService.setStock(product, row.product.getStock(), StockMovementReason.PRODUCT_IMPORTED);
+                }
+                if (row.has("valid")) {
+                    product.setValid(row.product.isValid());
+                }
+                product.setCurrency(row.product.getCurrency());
+            }
+            products.add(product);
+            productCache.invalidate(row.product.getCode());
+        }
+        productRepository.saveAll(products);
+        createdProducts.forEach(product ->
+                stockService.recordMovement(product.getId(), product.getStock(), StockMovementReason.PRODUCT_IMPORTED));
+        entityManager.flush();
+        entityManager.clear();
+        return created;
+    }
+
+    private void addError(ProductImportReportVO report, ImportRow row, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            String code = row.product == null ? null : row.product.getCode();
+            report.getErrors().add(new ProductImportErrorVO(row.rowNumber, code, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private void addStockIgnored(ProductImportReportVO report, ImportRow row) {
+        report.setStockIgnored(report.getStockIgnored() + 1);
+        if (report.getWarnings().size() < MAX_REPORTED_ERRORS) {
+            report.getWarnings().add(new ProductImportErrorVO(row.rowNumber, row.product.getCode(),
+                    "Stocul a fost ignorat, produsul este la flash sale"));
+        } else {
+            report.setWarningsTruncated(true);
+        }
+    }
+
+    private static class ImportRow {
+        private final long rowNumber;
+        private final ProductVO product;
+        private final Set<String> columns;
+        private final String error;
+
+        private ImportRow(long rowNumber, ProductVO product, Set<String> columns) {
+            this(rowNumber, product, columns, null);
+        }
+
+        private ImportRow(long rowNumber, ProductVO product, String error) {
+            this(rowNumber, product, Collections.emptySet(), error);
+        }
+
+        private ImportRow(long rowNumber, ProductVO product, Set<String> columns, String error) {
+            this.rowNumber = rowNumber;
+            this.product = product;
+            this.columns = columns;
+            this.error = error;
+        }
+
+        private boolean has(String column) {
+            return columns.contains(column);
+        }
+    }
+
+    private interface RowReader {
+        ImportRow next() throws IOException;
+
+        long getRowNumber();
+    }
+
+    private class JsonRowReader implements RowReader {
+        private final JsonParser parser;
+        private long rowNumber;
+
+        private JsonRowReader(InputStream inputStream) throws IOException {
+            parser = objectMapper.getFactory().createParser(inputStream);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array");
+            }
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            rowNumber++;
+            JsonNode productNode = parser.readValueAsTree();
+            try {
+                Set<String> columns = new HashSet<>();
+                productNode.fieldNames().forEachRemaining(column -> {
+                    if (!productNode.get(column).isNull()) {
+                        columns.add(column);
+                    }
+                });
+                return new ImportRow(rowNumber, objectMapper.treeToValue(productNode, ProductVO.class), columns);
+            } catch (JsonProcessingException exception) {
+                ProductVO productVO = new ProductVO();
+                productVO.setCode(productNode.path("code").asText(null));
+                return new ImportRow(rowNumber, productVO, "Randul nu a putut fi citit: " + exception.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public long getRowNumber() {
+            return rowNumber;
+        }
+    }
+
+    private static class CsvRowReader implements RowReader {
+        private static final List<String> COLUMNS = Arrays.asList("code", "description", "price", "stock", "valid", "currency");
+
+        private final BufferedReader reader;
+        private final int[] columnIndexes = new int[COLUMNS.size()];
+        private long rowNumber;
+
+        private CsvRowReader(InputStream inputStream) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Missing CSV header");
+            }
+            List<String> headerColumns = splitLine(header);
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                columnIndexes[i] = indexOfIgnoreCase(headerColumns, COLUMNS.get(i));
+            }
+            if (columnIndexes[0] < 0) {
+                throw new IOException("Missing code column");
+            }
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.trim().isEmpty());
+            rowNumber++;
+
+            List<String> fields = splitLine(line);
+            Set<String> columns = new HashSet<>();
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                if (field(fields, i) != null) {
+                    columns.add(COLUMNS.get(i));
+                }
+            }
+            ProductVO productVO = new ProductVO();
+            productVO.setCode(field(fields, 0));
+            try {
+                productVO.setDescription(field(fields, 1));
+                String price = field(fields, 2);
+                productVO.setPrice(price == null ? 0 : Double.parseDouble(price));
+                String stock = field(fields, 3);
+                productVO.setStock(stock == null ? 0 : Integer.parseInt(stock));
+                productVO.setValid(Boolean.parseBoolean(field(fields, 4)));
+                String currency = field(fields, 5);
+                productVO.setCurrency(currency == null ? null : Currencies.valueOf(currency.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException exception) {
+                return new ImportRow(rowNumber, productVO, "Randul nu a putut fi citit: " + exception.getMessage());
+            }
+            return new ImportRow(rowNumber, productVO, columns);
+        }
+
+        @Override
+        public long getRowNumber() {
+            return rowNumber;
+        }
+
+        private String field(List<String> fields, int column) {
+            int index = columnIndexes[column];
+            if (index < 0 || index >= fields.size() || fields.get(index).isEmpty()) {
+                return null;
+            }
+            return fields.get(index);
+        }
+
+        private static int indexOfIgnoreCase(List<String> values, String value) {
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i).trim().equalsIgnoreCase(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        static List<String> splitLine(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char character = line.charAt(i);
+                if (quoted) {
+                    if (character != '"') {
+                        field.append(character);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (character == '"') {
+                    quoted = true;
+                } else if (character == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(character);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -1,53 +1,107 @@
 package com.practice.onlineShop.services;
 
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.annotations.RetryOnConflict;
+import com.practice.onlineShop.cache.ProductCache;
 import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.ConcurrentUpdateException;
 import com.practice.onlineShop.exceptions.InvalidProductCodeException;
+import com.practice.onlineShop.exceptions.InvalidStockShardsException;
+import com.practice.onlineShop.logging.EventLogger;
 import com.practice.onlineShop.mappers.ProductMapper;
 import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.vos.ProductCacheStatsVO;
 import com.practice.onlineShop.vos.ProductVO;
+import com.practice.onlineShop.vos.StockJournalStatsVO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_STOCK_SHARDS = 64;
 
     private final ProductMapper productMapper;
     private final ProductRepository productRepository;
-
-    public void addProduct(ProductVO productVO, Long customerId){
-        System.out.println("Customer with id " + customerId + " is in service");
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final StockService stockService;
+    private final FlashSaleService flashSaleService;
+
+    @RequiresRole(Roles.ADMIN)
+    public void addProduct(ProductVO productVO, @CustomerId Long customerId){
+        eventLogger.log("product.add", "customerId", customerId, "productCode", productVO.getCode());
         Product product = productMapper.toEntity(productVO);
         productRepository.save(product);
+        stockService.recordMovement(product.getId(), product.getStock(), StockMovementReason.PRODUCT_ADDED);
+        productCache.invalidate(product.getCode());
     }
 
     public ProductVO getProduct(String productCode) throws InvalidProductCodeException {
-        Product product = getProductEntity(productCode);
-
-        return productMapper.toVO(product);
+        return productCache.get(productCode, code -> productRepository.findByCode(code).map(this::toVO))
+                .orElseThrow(InvalidProductCodeException::new);
+    }
 
+    public ProductCacheStatsVO getProductCacheStats() {
+        return productCache.getStats();
     }
 
 
-    public List<ProductVO> getProducts(){
-        List<ProductVO> products = new ArrayList<>();
-        Iterable<Product> productsFromDbIterable = productRepository.findAll();
-        Iterator<Product> iterator = productsFromDbIterable.iterator();
-        while(iterator.hasNext()) {
-            Product product = iterator.next();
-            ProductVO productVO = productMapper.toVO(product);
-            products.add(productVO);
+    public List<ProductVO> getProducts(Long after, Integer limit, Boolean valid, Currencies currency,
+                                       Double minPrice, Double maxPrice){
+        long lastSeenId = after == null ? 0 : after;
+        List<Product> productsFromDb = productRepository.findPageAfter(lastSeenId, valid, currency, minPrice, maxPrice,
+                PageRequest.of(0, getPageSize(limit)));
+
+        List<ProductVO> products = new ArrayList<>(productsFromDb.size());
+        for (Product product : productsFromDb) {
+            products.add(toVO(product));
         }
         return products;
     }
 
-    public void updateProduct(ProductVO productVO, Long customerId) throws InvalidProductCodeException {
-        System.out.println("Customer with id " +  customerId + "is in service for update");
+    @Transactional(readOnly = true)
+    public void exportProducts(OutputStream outputStream) throws IOException {
+        try (Stream<Product> productsFromDb = productRepository.streamAll();
+             SequenceWriter writer = objectMapper.writerFor(ProductVO.class)
+                     .withRootValueSeparator("\n")
+                     .writeValues(outputStream)) {
+            Iterator<Product> iterator = productsFromDb.iterator();
+            while (iterator.hasNext()) {
+                Product product = iterator.next();
+                writer.write(toVO(product));
+                entityManager.detach(product);
+            }
+        }
+    }
+
+    @RequiresRole({Roles.ADMIN, Roles.EDITOR})
+    @RetryOnConflict
+    @Transactional
+    public void updateProduct(ProductVO productVO, @CustomerId Long customerId) throws InvalidProductCodeException, ConcurrentUpdateException {
+        eventLogger.log("product.update", "customerId", customerId, "productCode", productVO.getCode());
         verifyProductCode(productVO.getCode());
 
         Product product = getProductEntity(productVO.getCode());
@@ -55,29 +109,111 @@ public class ProductService {
         product.setPrice(productVO.getPrice());
         product.setDescription(productVO.getDescription());
         product.setCurrency(productVO.getCurrency());
-        product.setStock(productVO.getStock());
+        // the stock of a product on flash sale is kept by the sale until it is stopped
+        if (flashSaleService.isActive(product.getId())) {
+            eventLogger.log("product.update.stockIgnored", "productCode", product.getCode());
+        } else {
+            stockService.setStock(product, productVO.getStock(), StockMovementReason.PRODUCT_UPDATED);
+        }
 
         productRepository.save(product);
+        productCache.invalidate(product.getCode());
     }
 
-    public void deleteProduct(String productCode, Long customerId) throws InvalidProductCodeException {
-        System.out.println("User with id: " + customerId + " is deleting " + productCode);
+    @RequiresRole(Roles.ADMIN)
+    public void deleteProduct(String productCode, @CustomerId Long customerId) throws InvalidProductCodeException {
+        eventLogger.log("product.delete", "customerId", customerId, "productCode", productCode);
         verifyProductCode(productCode);
 
         Product product = getProductEntity(productCode);
         productRepository.delete(product);
+        stockService.recordRemoval(product.getId());
+        productCache.invalidate(productCode);
+
+    }
+
+    /**
+     * Adds stock with an atomic increment of the stock column, so concurrent additions neither conflict nor get lost.
+     */
+    @RequiresRole(Roles.ADMIN)
+    @Transactional
+    public void addStock(String productCode, Integer quantity, @CustomerId Long customerId) throws InvalidProductCodeException {
+        eventLogger.log("product.addStock", "customerId", customerId, "productCode", productCode, "quantity", quantity);
+
+        verifyProductCode(productCode);
+        Product product = getProductEntity(productCode);
 
+        if (flashSaleService.isActive(product.getId())) {
+            flashSaleService.releaseAfterCommit(product.getId(), quantity, StockMovementReason.STOCK_ADDED);
+        } else if (product.hasShardedStock()) {
+            stockService.releaseStock(product.getId(), quantity, StockMovementReason.STOCK_ADDED);
+        } else {
+            productRepository.incrementStock(product.getId(), quantity);
+            stockService.recordMovement(product.getId(), quantity, StockMovementReason.STOCK_ADDED);
+        }
+        productCache.invalidate(productCode);
     }
 
-    public void addStock(String productCode, Integer quantity, Long customerId) throws InvalidProductCodeException {
-        System.out.println("User with id: " + customerId + " is adding stock for product code " + productCode +
-                ", number of times: " + quantity);
+    /**
+     * Splits the stock of a product into {@code stockShards} sub-counters, for products so popular that orders would
+     * otherwise queue up on the lock of their row; {@code 0} keeps the whole stock on the product again.
+     */
+    @RequiresRole(Roles.ADMIN)
+    @RetryOnConflict
+    @Transactional
+    public void shardStock(String productCode, Integer stockShards, @CustomerId Long customerId) throws InvalidProductCodeException, InvalidStockShardsException, ConcurrentUpdateException {
+        eventLogger.log("product.shardStock", "customerId", customerId, "productCode", productCode, "stockShards", stockShards);
 
         verifyProductCode(productCode);
+        if (stockShards == null || stockShards < 0 || stockShards > MAX_STOCK_SHARDS) {
+            throw new InvalidStockShardsException();
+        }
         Product product = getProductEntity(productCode);
+        // releases pick a shard under the lock of the product row, so none of them can hit the shards deleted here
+        productRepository.findAllByIdForUpdate(Collections.singleton(product.getId()));
+        stockService.reshard(product, stockShards);
+        productCache.invalidate(productCode);
+    }
+
+    public StockJournalStatsVO getStockJournalStats() {
+        return stockService.getJournalStats();
+    }
+
+    @RequiresRole(Roles.ADMIN)
+    public void snapshotStockJournal(@CustomerId Long customerId) throws IOException {
+        eventLogger.log("product.stockJournal.snapshot", "customerId", customerId);
+        stockService.snapshotJournal();
+    }
+
+    /**
+     * Puts the stock replayed from the journal back into the database and returns how many products it corrected.
+     * Products on flash sale are left out, their stock lives in the sale.
+     */
+    @RequiresRole(Roles.ADMIN)
+    public int rebuildStockFromJournal(@CustomerId Long customerId) {
+        int changed = stockService.rebuildFromJournal(flashSaleService::isActive);
+        productCache.clear();
+        eventLogger.log("product.stockJournal.rebuild", "customerId", customerId, "changed", changed);
+        return changed;
+    }
 
-        int oldStock = product.getStock();
-        product.setStock(oldStock + quantity);
+    private ProductVO toVO(Product product) {
+        ProductVO productVO = productMapper.toVO(product);
+        Long flashSaleStock = flashSaleService.getRemainingStock(product.getId());
+        if (flashSaleStock != null) {
+            productVO.setStock(flashSaleStock.intValue());
+        } else if (product.hasShardedStock()) {
+            productVO.setStock(stockService.getStock(product));
+        }
+        productVO.setAvailableStock(productVO.getStock() - stockService.getReservedStock(product.getId()));
+        return productVO;
+    }
+
+    private int getPageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     private void verifyProductCode(String productCode) throws InvalidProductCodeException {
@@ -0,0 +1,246 @@
+package com.practice.onlineShop.services;
+
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.cache.ProductCache;
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.StockShard;
+import com.practice.onlineShop.enums.OrderStatus;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.ReconciliationInProgressException;
+import com.practice.onlineShop.journal.StockJournal;
+import com.practice.onlineShop.logging.EventLogger;
+import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.repositories.StockShardRepository;
+import com.practice.onlineShop.vos.StockDiscrepancyVO;
+import com.practice.onlineShop.vos.StockReconciliationReportVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds the products whose stock drifted from the stock they should have: the sum of their adjustments in the
+ * {@link StockJournal} minus the quantities in their placed and delivered orders. The product id range is split into
+ * partitions of {@code stock.reconciliation.partition-size} ids that a fork-join pool checks in parallel, each with one
+ * query for its products, one for their stock shards and one that sums their order items in the database, so no order
+ * is loaded. When asked to, the drifted products of a partition are locked, checked again and set to their expected
+ * stock. Products on flash sale, whose stock lives in memory, and products the journal doesn't know are left out.
+ */
+@Service
+public class StockReconciliationService {
+    public static final int MAX_REPORTED_DISCREPANCIES = 1000;
+    private static final long JOURNAL_WAIT_MILLIS = 1000;
+
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final StockShardRepository stockShardRepository;
+    private final StockService stockService;
+    private final StockJournal stockJournal;
+    private final FlashSaleService flashSaleService;
+    private final ProductCache productCache;
+    private final EventLogger eventLogger;
+    private final TransactionTemplate readTransactionTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long partitionSize;
+    private final ForkJoinPool forkJoinPool;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public StockReconciliationService(ProductRepository productRepository, OrderRepository orderRepository,
+                                      StockShardRepository stockShardRepository, StockService stockService,
+                                      StockJournal stockJournal, FlashSaleService flashSaleService,
+                                      ProductCache productCache, EventLogger eventLogger,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${stock.reconciliation.partition-size:10000}") long partitionSize,
+                                      @Value("${stock.reconciliation.parallelism:4}") int parallelism) {
+        if (partitionSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("stock.reconciliation.partition-size and parallelism must be positive");
+        }
+        this.productRepository = productRepository;
+        this.orderRepository = orderRepository;
+        this.stockShardRepository = stockShardRepository;
+        this.stockService = stockService;
+        this.stockJournal = stockJournal;
+        this.flashSaleService = flashSaleService;
+        this.productCache = productCache;
+        this.eventLogger = eventLogger;
+        this.readTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate.setReadOnly(true);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.partitionSize = partitionSize;
+        this.forkJoinPool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void stop() {
+        forkJoinPool.shutdownNow();
+    }
+
+    @RequiresRole(Roles.ADMIN)
+    public StockReconciliationReportVO reconcile(boolean autoCorrect, @CustomerId Long customerId) throws ReconciliationInProgressException {
+        eventLogger.log("stock.reconcile", "customerId", customerId, "autoCorrect", autoCorrect);
+        if (!running.compareAndSet(false, true)) {
+            throw new ReconciliationInProgressException();
+        }
+        try {
+            long start = System.nanoTime();
+            Object[] idRange = productRepository.findIdRange().get(0);
+            StockReconciliationReportVO report = idRange[0] == null ? new StockReconciliationReportVO()
+                    : forkJoinPool.invoke(new ReconciliationTask((Long) idRange[0], (Long) idRange[1],
+                    stockJournal.getAdjustments(), autoCorrect));
+            report.getDiscrepancyDetails().sort(Comparator.comparing(StockDiscrepancyVO::getProductId));
+            report.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            eventLogger.log("stock.reconciled", "checked", report.getChecked(), "discrepancies", report.getDiscrepancies(),
+                    "corrected", report.getCorrected());
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private StockReconciliationReportVO reconcilePartition(long from, long to, Map<Long, Long> adjustmentsByProductId,
+                                                           boolean autoCorrect) {
+        StockReconciliationReportVO report = new StockReconciliationReportVO();
+        report.setPartitions(1);
+        List<StockDiscrepancyVO> found = readTransactionTemplate.execute(status ->
+                findDiscrepancies(from, to, adjustmentsByProductId, report));
+        List<StockDiscrepancyVO> discrepancies = found;
+        if (autoCorrect && !found.isEmpty()) {
+            try {
+                discrepancies = transactionTemplate.execute(status -> correct(from, to, found));
+            } catch (RuntimeException exception) {
+                eventLogger.log("stock.reconcile.correctionFailed", "from", from, "exception",
+                        exception.getClass().getSimpleName());
+            }
+        }
+        report.setDiscrepancies(discrepancies.size());
+        report.setCorrected(discrepancies.stream().filter(StockDiscrepancyVO::isCorrected).count());
+        report.getDiscrepancyDetails().addAll(discrepancies);
+        return report;
+    }
+
+    private List<StockDiscrepancyVO> findDiscrepancies(long from, long to, Map<Long, Long> adjustmentsByProductId,
+                                                       StockReconciliationReportVO report) {
+        Map<Long, Long> shardStocks = toMap(stockShardRepository.sumStockByProductIdBetween(from, to));
+        Map<Long, Long> orderedQuantities = toMap(orderRepository.sumQuantitiesByProductIdBetweenAndStatusIn(from, to,
+                OrderStatus.getStockHoldingStatuses()));
+        List<StockDiscrepancyVO> discrepancies = new ArrayList<>();
+        for (Object[] product : productRepository.findIdsCodesAndStocksByIdBetween(from, to)) {
+            long productId = (Long) product[0];
+            Long adjustments = adjustmentsByProductId.get(productId);
+            if (flashSaleService.isActive(productId)) {
+                report.setSkipped(report.getSkipped() + 1);
+            } else if (adjustments == null) {
+                report.setUntracked(report.getUntracked() + 1);
+            } else {
+                report.setChecked(report.getChecked() + 1);
+                long stock = (Integer) product[2] + shardStocks.getOrDefault(productId, 0L);
+                long expectedStock = adjustments - orderedQuantities.getOrDefault(productId, 0L);
+                if (stock != expectedStock) {
+                    discrepancies.add(new StockDiscrepancyVO(productId, (String) product[1], stock, expectedStock, false));
+                }
+            }
+        }
+        return discrepancies;
+    }
+
+    /**
+     * Locks the drifted products and checks them again, since orders may have changed them since they were read, then
+     * sets the ones still drifted to their expected stock. Returns the discrepancies that were confirmed.
+     */
+    private List<StockDiscrepancyVO> correct(long from, long to, List<StockDiscrepancyVO> discrepancies) {
+        List<Long> productIds = new ArrayList<>();
+        discrepancies.forEach(discrepancy -> productIds.add(discrepancy.getProductId()));
+        List<Product> products = productRepository.findAllByIdForUpdate(productIds);
+        Map<Long, List<StockShard>> stockShardsByProductId = stockService.lockStockShards(products);
+        // orders that committed before the locks were taken may not be in the journal yet
+        if (!stockJournal.awaitAppended(productIds, JOURNAL_WAIT_MILLIS)) {
+            return discrepancies;
+        }
+        Map<Long, Long> orderedQuantities = toMap(orderRepository.sumQuantitiesByProductIdBetweenAndStatusIn(from, to,
+                OrderStatus.getStockHoldingStatuses()));
+
+        List<StockDiscrepancyVO> confirmed = new ArrayList<>();
+        for (Product product : products) {
+            Long adjustments = stockJournal.getAdjustments(product.getId());
+            if (adjustments == null || flashSaleService.isActive(product.getId())) {
+                continue;
+            }
+            long stock = product.getStock() + StockService.sumStock(
+                    stockShardsByProductId.getOrDefault(product.getId(), Collections.emptyList()));
+            long expectedStock = adjustments - orderedQuantities.getOrDefault(product.getId(), 0L);
+            if (stock == expectedStock) {
+                continue;
+            }
+            // more was ordered than the product ever had, which no stock can fix
+            boolean correctable = expectedStock >= 0 && expectedStock <= Integer.MAX_VALUE;
+            if (correctable) {
+                stockService.setStock(product, (int) expectedStock, StockMovementReason.RECONCILED);
+                productCache.invalidate(product.getCode());
+            }
+            confirmed.add(new StockDiscrepancyVO(product.getId(), product.getCode(), stock, expectedStock, correctable));
+        }
+        return confirmed;
+    }
+
+    private static Map<Long, Long> toMap(List<Object[]> rows) {
+        Map<Long, Long> map = new HashMap<>(Math.max(16, rows.size() * 4 / 3 + 1));
+        for (Object[] row : rows) {
+            map.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        return map;
+    }
+
+    private static void merge(StockReconciliationReportVO report, StockReconciliationReportVO other) {
+        report.setChecked(report.getChecked() + other.getChecked());
+        report.setUntracked(report.getUntracked() + other.getUntracked());
+        report.setSkipped(report.getSkipped() + other.getSkipped());
+        report.setDiscrepancies(report.getDiscrepancies() + other.getDiscrepancies());
+        report.setCorrected(report.getCorrected() + other.getCorrected());
+        report.setPartitions(report.getPartitions() + other.getPartitions());
+        report.setDiscrepanciesTruncated(report.isDiscrepanciesTruncated() || other.isDiscrepanciesTruncated());
+        List<StockDiscrepancyVO> details = report.getDiscrepancyDetails();
+        details.addAll(other.getDiscrepancyDetails());
+        if (details.size() > MAX_REPORTED_DISCREPANCIES) {
+            details.sort(Comparator.comparing(StockDiscrepancyVO::getProductId));
+            details.subList(MAX_REPORTED_DISCREPANCIES, details.size()).clear();
+            report.setDiscrepanciesTruncated(true);
+        }
+    }
+
+    private class ReconciliationTask extends RecursiveTask<StockReconciliationReportVO> {
+        private final long from;
+        private final long to;
+        private final Map<Long, Long> adjustmentsByProductId;
+        private final boolean autoCorrect;
+
+        private ReconciliationTask(long from, long to, Map<Long, Long> adjustmentsByProductId, boolean autoCorrect) {
+            this.from = from;
+            this.to = to;
+            this.adjustmentsByProductId = adjustmentsByProductId;
+            this.autoCorrect = autoCorrect;
+        }
+
+        @Override
+        protected StockReconciliationReportVO compute() {
+            if (to - from < partitionSize) {
+                return reconcilePartition(from, to, adjustmentsByProductId, autoCorrect);
+            }
+            long middle = from + (to - from) / 2;
+            ReconciliationTask lower = new ReconciliationTask(from, middle, adjustmentsByProductId, autoCorrect);
+            lower.fork();
+            StockReconciliationReportVO report = new ReconciliationTask(middle + 1, to, adjustmentsByProductId, autoCorrect).compute();
+            merge(report, lower.join());
+            return report;
+        }
+    }
+}
@@ -1,19 +1,325 @@
 package com.practice.onlineShop.services;
 
+import com.practice.onlineShop.cache.StockReservationTable;
 import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.StockShard;
+import com.practice.onlineShop.enums.OrderStatus;
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.exceptions.NotEnoughStockException;
+import com.practice.onlineShop.journal.StockJournal;
+import com.practice.onlineShop.repositories.OrderRepository;
 import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.repositories.StockShardRepository;
+import com.practice.onlineShop.vos.StockJournalStatsVO;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Changes the stock of products. A product with sharded stock keeps it split across {@link StockShard}s, so orders
+ * for a hot product update different rows instead of all waiting for the lock of the product row.
+ * Stock held in shopping carts is counted in the {@link StockReservationTable} and can't be taken by other orders.
+ * Every change of stock is also appended to the {@link StockJournal} once its transaction commits.
+ */
 @Service
 @RequiredArgsConstructor
-public class StockService {
+public class StockService implements SmartInitializingSingleton {
+    private static final int JOURNAL_PAGE_SIZE = 500;
+    private static final long JOURNAL_WAIT_MILLIS = 1000;
+
     private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final StockShardRepository stockShardRepository;
+    private final StockReservationTable stockReservationTable;
+    private final StockJournal stockJournal;
+
+    /**
+     * Starts an empty stock journal from the stock the products have in the database. Their adjustments are taken to
+     * be that stock plus what their placed and delivered orders hold.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!stockJournal.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> stocks = new HashMap<>();
+        Map<Long, Long> adjustments = new HashMap<>();
+        List<Product> products = productRepository.findPageAfter(0, null, null, null, null, PageRequest.of(0, JOURNAL_PAGE_SIZE));
+        while (!products.isEmpty()) {
+            for (Product product : products) {
+                long stock = getStock(product);
+                stocks.put(product.getId(), stock);
+                adjustments.put(product.getId(), stock);
+            }
+            for (Object[] orderedQuantity : orderRepository.sumQuantitiesByProductIdBetweenAndStatusIn(products.get(0).getId(),
+                    products.get(products.size() - 1).getId(), OrderStatus.getStockHoldingStatuses())) {
+                adjustments.merge((Long) orderedQuantity[0], (Long) orderedQuantity[1], Long::sum);
+            }
+            products = productRepository.findPageAfter(products.get(products.size() - 1).getId(), null, null, null, null,
+                    PageRequest.of(0, JOURNAL_PAGE_SIZE));
+        }
+        try {
+            stockJournal.initialize(stocks, adjustments);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Takes stock for an order. The reservations are read once the stock was taken, so a cart that reserved the product
+     * in the meantime had to wait for its lock and is seen here; the order then fails if it ate into reserved stock.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserveStock(Product product, Integer quantity) throws NotEnoughStockException {
+        takeStock(product, quantity);
+
+        int reserved = stockReservationTable.getReserved(product.getId());
+        if (reserved > 0 && getStockInTransaction(product) < reserved) {
+            throw new NotEnoughStockException();
+        }
+        stockJournal.appendAfterCommit(product.getId(), -quantity, StockMovementReason.ORDER_PLACED);
+    }
+
+    /**
+     * Takes stock that was reserved in a cart, so it isn't checked against the reservations again.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void takeReservedStock(Product product, Integer quantity) throws NotEnoughStockException {
+        takeStock(product, quantity);
+        stockJournal.appendAfterCommit(product.getId(), -quantity, StockMovementReason.CART_CHECKOUT);
+    }
 
-    public boolean isHavingEnoughStock(Integer productId, Integer quantity) {
-        Product product = productRepository.findById(productId.longValue()).get();
-        return product.getStock() >= quantity;
+    public int getReservedStock(long productId) {
+        return stockReservationTable.getReserved(productId);
+    }
+
+    /**
+     * Gives units back to a product. Its row is locked before a shard is picked, so a reshard can't delete the shard
+     * in between; should the shard still be missing, the units go to the product row. Nothing is given back to, or
+     * journaled for, a product that was deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseStock(long productId, int quantity, StockMovementReason reason) {
+        Optional<Integer> stockShards = productRepository.findStockShardsByIdForUpdate(productId);
+        if (!stockShards.isPresent()) {
+            return;
+        }
+        int updated = 0;
+        if (stockShards.get() > 0) {
+            updated = stockShardRepository.incrementStock(productId, ThreadLocalRandom.current().nextInt(stockShards.get()), quantity);
+        }
+        if (updated == 0) {
+            updated = productRepository.incrementStock(productId, quantity);
+        }
+        if (updated == 0) {
+            return;
+        }
+        stockJournal.appendAfterCommit(productId, quantity, reason);
+    }
+
+    /**
+     * Sets the whole stock of the product and journals the difference to the stock it had. The product is either
+     * locked or saved with its version checked, so no other change of its stock can come in between.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void setStock(Product product, int stock, StockMovementReason reason) {
+        List<StockShard> stockShards = lockStockShards(product);
+        stockJournal.appendAfterCommit(product.getId(), (long) stock - product.getStock() - sumStock(stockShards), reason);
+        writeStock(product, stockShards, stock);
+    }
+
+    /**
+     * Changes the whole stock of the product by {@code delta}, keeping whatever other transactions changed in the
+     * meantime, and journals the part of it the caller didn't journal already. The product is expected to be locked by
+     * the caller.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void changeStock(Product product, long delta, long journaledDelta, StockMovementReason reason) {
+        List<StockShard> stockShards = lockStockShards(product);
+        stockJournal.appendAfterCommit(product.getId(), delta - journaledDelta, reason);
+        writeStock(product, stockShards, (int) (product.getStock() + sumStock(stockShards) + delta));
+    }
+
+    /**
+     * Journals a change of stock made by the caller, such as the stock of a new product or stock taken in memory.
+     */
+    public void recordMovement(long productId, long delta, StockMovementReason reason) {
+        stockJournal.appendAfterCommit(productId, delta, reason);
+    }
+
+    public void recordRemoval(long productId) {
+        stockJournal.appendAfterCommit(productId, 0, StockMovementReason.PRODUCT_DELETED);
+    }
+
+    /**
+     * Splits the whole stock of the product into {@code shardCount} shards, or moves it back into the product row
+     * when {@code shardCount} is {@code 0}. The product is expected to be locked by the caller.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reshard(Product product, int shardCount) {
+        List<StockShard> oldShards = stockShardRepository.findAllByProductIdInForUpdate(Collections.singleton(product.getId()));
+        int stock = product.getStock() + sumStock(oldShards);
+        stockShardRepository.deleteByProductId(product.getId());
+
+        product.setStockShards(shardCount);
+        if (shardCount == 0) {
+            product.setStock(stock);
+            return;
+        }
+        product.setStock(0);
+        List<StockShard> newShards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            StockShard stockShard = new StockShard();
+            stockShard.setProduct(product);
+            stockShard.setShardIndex(i);
+            stockShard.setStock(shareOf(stock, shardCount, i));
+            newShards.add(stockShard);
+        }
+        stockShardRepository.saveAll(newShards);
+    }
 
+    public StockJournalStatsVO getJournalStats() {
+        return stockJournal.getStats();
+    }
+
+    public void snapshotJournal() throws IOException {
+        stockJournal.snapshot();
+    }
+
+    /**
+     * Sets the stock of the products known to the journal to the stock replayed from it, for a database whose stock
+     * was lost or drifted, and returns how many products changed. Nothing is journaled, the journal already has it.
+     * Each page of products is locked and its pending appends awaited before its stock is read from the journal; a
+     * page whose appends don't arrive in time is left as it is, as are the products {@code skipped} matches.
+     */
+    @Transactional
+    public int rebuildFromJournal(Predicate<Long> skipped) {
+        List<Long> productIds = new ArrayList<>(stockJournal.getStocks().keySet());
+        Collections.sort(productIds);
+        int changed = 0;
+        for (int from = 0; from < productIds.size(); from += JOURNAL_PAGE_SIZE) {
+            List<Long> pageIds = productIds.subList(from, Math.min(from + JOURNAL_PAGE_SIZE, productIds.size()));
+            List<Product> products = productRepository.findAllByIdForUpdate(pageIds);
+            Map<Long, List<StockShard>> stockShardsByProductId = lockStockShards(products);
+            if (!stockJournal.awaitAppended(pageIds, JOURNAL_WAIT_MILLIS)) {
+                continue;
+            }
+            for (Product product : products) {
+                Long journaledStock = stockJournal.getStock(product.getId());
+                if (journaledStock == null || skipped.test(product.getId())) {
+                    continue;
+                }
+                int stock = journaledStock.intValue();
+                List<StockShard> stockShards = stockShardsByProductId.getOrDefault(product.getId(), Collections.emptyList());
+                if (product.getStock() + sumStock(stockShards) == stock) {
+                    continue;
+                }
+                writeStock(product, stockShards, stock);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    public int getStock(Product product) {
+        if (!product.hasShardedStock()) {
+            return product.getStock();
+        }
+        return (int) (product.getStock() + stockShardRepository.sumStockByProductId(product.getId()));
+    }
+
+    /**
+     * Locks the shards of the products with sharded stock among {@code products} and groups them by product id.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<Long, List<StockShard>> lockStockShards(Collection<Product> products) {
+        Set<Long> shardedProductIds = new HashSet<>();
+        products.stream().filter(Product::hasShardedStock).forEach(product -> shardedProductIds.add(product.getId()));
+        Map<Long, List<StockShard>> stockShardsByProductId = new HashMap<>();
+        if (shardedProductIds.isEmpty()) {
+            return stockShardsByProductId;
+        }
+        for (StockShard stockShard : stockShardRepository.findAllByProductIdInForUpdate(shardedProductIds)) {
+            stockShardsByProductId.computeIfAbsent(stockShard.getProduct().getId(), productId -> new ArrayList<>()).add(stockShard);
+        }
+        return stockShardsByProductId;
+    }
+
+    public static int sumStock(List<StockShard> stockShards) {
+        int stock = 0;
+        for (StockShard stockShard : stockShards) {
+            stock += stockShard.getStock();
+        }
+        return stock;
+    }
+
+    public static void take(List<StockShard> stockShards, int quantity) {
+        int remaining = quantity;
+        for (StockShard stockShard : stockShards) {
+            int taken = Math.min(stockShard.getStock(), remaining);
+            stockShard.setStock(stockShard.getStock() - taken);
+            remaining -= taken;
+            if (remaining == 0) {
+                return;
+            }
+        }
+    }
+
+    private void takeStock(Product product, Integer quantity) throws NotEnoughStockException {
+        if (!product.hasShardedStock()) {
+            if (productRepository.decrementStock(product.getId(), quantity) == 0) {
+                throw new NotEnoughStockException();
+            }
+            return;
+        }
+
+        int shards = product.getStockShards();
+        int firstShard = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            if (stockShardRepository.decrementStock(product.getId(), (firstShard + i) % shards, quantity) == 1) {
+                return;
+            }
+        }
+        // no single shard has enough stock left, so take it from several of them
+        List<StockShard> stockShards = stockShardRepository.findAllByProductIdInForUpdate(Collections.singleton(product.getId()));
+        if (sumStock(stockShards) < quantity) {
+            throw new NotEnoughStockException();
+        }
+        take(stockShards, quantity);
+    }
+
+    private List<StockShard> lockStockShards(Product product) {
+        if (!product.hasShardedStock()) {
+            return Collections.emptyList();
+        }
+        return stockShardRepository.findAllByProductIdInForUpdate(Collections.singleton(product.getId()));
+    }
+
+    private static void writeStock(Product product, List<StockShard> stockShards, int stock) {
+        product.setStock(stockShards.isEmpty() ? stock : 0);
+        for (int i = 0; i < stockShards.size(); i++) {
+            stockShards.get(i).setStock(shareOf(stock, stockShards.size(), i));
+        }
+    }
+
+    private int getStockInTransaction(Product product) {
+        if (!product.hasShardedStock()) {
+            return productRepository.findStockById(product.getId());
+        }
+        // other shards may be changed by orders that haven't committed yet, so this check is the best effort
+        return (int) (product.getStock() + stockShardRepository.sumStockByProductId(product.getId()));
+    }
 
+    private static int shareOf(int stock, int shardCount, int shardIndex) {
+        return stock / shardCount + (shardIndex < stock % shardCount ? 1 : 0);
     }
 }
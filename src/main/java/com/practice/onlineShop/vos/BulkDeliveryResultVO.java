@@ -0,0 +1,13 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkDeliveryResultVO {
+    private int delivered;
+    private List<Long> canceledOrderIds = new ArrayList<>();
+    private List<Long> unknownOrderIds = new ArrayList<>();
+}
@@ -0,0 +1,11 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class CartItemVO {
+    private Long productId;
+    private String productCode;
+    private Integer quantity;
+    private long expiresAt;
+}
@@ -0,0 +1,12 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class CartVO {
+    private long userId;
+    private List<CartItemVO> items = new ArrayList<>();
+}
@@ -0,0 +1,5 @@
+package com.practice.onlineShop.vos;
+
+public interface CustomerOwned {
+    Integer getUserId();
+}
@@ -0,0 +1,13 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class FlashSaleStatsVO {
+    private String productCode;
+    private long remainingStock;
+    private int waiting;
+    private long allocated;
+    private long rejected;
+    private double allocationsPerSecond;
+}
@@ -0,0 +1,16 @@
+package com.practice.onlineShop.vos;
+
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class OrderHistoryVO {
+    private long id;
+    private OrderStatus status;
+    private List<OrderItemVO> orderItems;
+    private Map<Currencies, Double> totals;
+}
@@ -0,0 +1,14 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class OrderIntakeStatsVO {
+    private boolean enabled;
+    private int queueDepth;
+    private int queueCapacity;
+    private long enqueued;
+    private long drained;
+    private long batches;
+    private long refused;
+}
@@ -0,0 +1,13 @@
+package com.practice.onlineShop.vos;
+
+import com.practice.onlineShop.enums.Currencies;
+import lombok.Data;
+
+@Data
+public class OrderItemVO {
+    private long productId;
+    private String productCode;
+    private int quantity;
+    private double unitPrice;
+    private Currencies currency;
+}
@@ -0,0 +1,11 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class OrderResultVO {
+    private int index;
+    private boolean accepted;
+    private Long orderId;
+    private String error;
+}
@@ -0,0 +1,23 @@
+package com.practice.onlineShop.vos;
+
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
+import com.practice.onlineShop.mappers.OrderMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class OrderSummaryVO {
+    private long id;
+    private OrderStatus status;
+    private Map<Currencies, Double> totals;
+
+    public OrderSummaryVO(long id, OrderStatus status, double totalEur, double totalUsd, double totalRon) {
+        this.id = id;
+        this.status = status;
+        this.totals = OrderMapper.toTotals(totalEur, totalUsd, totalRon);
+    }
+}
@@ -0,0 +1,16 @@
+package com.practice.onlineShop.vos;
+
+import com.practice.onlineShop.enums.OrderIntakeStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderTokenVO {
+    private String token;
+    private OrderIntakeStatus status;
+    private Long orderId;
+    private String error;
+}
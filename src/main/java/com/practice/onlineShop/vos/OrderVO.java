@@ -5,7 +5,7 @@ import lombok.Data;
 import java.util.Map;
 
 @Data
-public class OrderVO {
+public class OrderVO implements CustomerOwned {
     private Integer userId;
     private Map<Integer, Integer> productsIdsToQuantity;
 
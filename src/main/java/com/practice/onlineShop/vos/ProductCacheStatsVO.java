@@ -0,0 +1,13 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class ProductCacheStatsVO {
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+}
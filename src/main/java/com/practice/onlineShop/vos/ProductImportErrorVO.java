@@ -0,0 +1,14 @@
+package com.practice.onlineShop.vos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportErrorVO {
+    private long row;
+    private String code;
+    private String message;
+}
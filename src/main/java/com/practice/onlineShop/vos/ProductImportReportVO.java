@@ -0,0 +1,18 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ProductImportReportVO {
+    private long created;
+    private long updated;
+    private long failed;
+    private boolean errorsTruncated;
+    private List<ProductImportErrorVO> errors = new ArrayList<>();
+    private long stockIgnored;
+    private boolean warningsTruncated;
+    private List<ProductImportErrorVO> warnings = new ArrayList<>();
+}
@@ -10,6 +10,7 @@ public class ProductVO {
     private String description;
     private double price;
     private int stock;
+    private int availableStock;
     private boolean valid;
     private Currencies currency;
 }
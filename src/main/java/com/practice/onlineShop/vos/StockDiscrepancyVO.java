@@ -0,0 +1,16 @@
+package com.practice.onlineShop.vos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockDiscrepancyVO {
+    private long productId;
+    private String productCode;
+    private long stock;
+    private long expectedStock;
+    private boolean corrected;
+}
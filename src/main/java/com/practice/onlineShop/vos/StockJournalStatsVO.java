@@ -0,0 +1,16 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+@Data
+public class StockJournalStatsVO {
+    private boolean enabled;
+    private boolean degraded;
+    private long lastSequence;
+    private long durableSequence;
+    private long snapshotSequence;
+    private long appended;
+    private long syncs;
+    private int segments;
+    private int products;
+}
@@ -0,0 +1,19 @@
+package com.practice.onlineShop.vos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class StockReconciliationReportVO {
+    private long checked;
+    private long untracked;
+    private long skipped;
+    private long discrepancies;
+    private long corrected;
+    private int partitions;
+    private long durationMillis;
+    private boolean discrepanciesTruncated;
+    private List<StockDiscrepancyVO> discrepancyDetails = new ArrayList<>();
+}
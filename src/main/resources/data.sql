@@ -1,4 +1,6 @@
-INSERT INTO user(city, number, street, zipcode, firstname, password, surname, username) values('Bucuresti', 2, 'Lalelelor', '123','Admin first', 'password', 'lastName', 'adminUsername'), ('Timisoara', 21, 'Aleea Libertatii', '22','Client first', 'password2', 'clientLastName', 'clientUsername'), ('Timisoara', 21, 'Aleea Libertatii', '22','Client first', 'password2', 'clientLastName', 'expeditorUsername');
+INSERT INTO user(id, city, number, street, zipcode, firstname, password, surname, username) values(1, 'Bucuresti', 2, 'Lalelelor', '123','Admin first', 'password', 'lastName', 'adminUsername'), (2, 'Timisoara', 21, 'Aleea Libertatii', '22','Client first', 'password2', 'clientLastName', 'clientUsername'), (3, 'Timisoara', 21, 'Aleea Libertatii', '22','Client first', 'password2', 'clientLastName', 'expeditorUsername');
 INSERT INTO user_roles values (1, 'ADMIN'),(1, 'EXPEDITOR');
 INSERT INTO user_roles values (2, 'CLIENT');
-INSERT INTO user_roles values (3, 'EXPEDITOR');
\ No newline at end of file
+INSERT INTO user_roles values (3, 'EXPEDITOR');
+-- the pooled generator hands out the block below the next sequence value, so keep it clear of the ids above
+ALTER SEQUENCE user_seq RESTART WITH 101;
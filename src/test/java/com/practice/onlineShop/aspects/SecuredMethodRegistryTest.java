@@ -0,0 +1,55 @@
+package com.practice.onlineShop.aspects;
+
+import com.practice.onlineShop.annotations.CustomerId;
+import com.practice.onlineShop.annotations.RequiresRole;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.vos.OrderVO;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SecuredMethodRegistryTest {
+
+    static class SecuredOperations {
+        @RequiresRole({Roles.ADMIN, Roles.EDITOR})
+        public void update(String code, @CustomerId Long customerId) {}
+
+        @RequiresRole(Roles.CLIENT)
+        public void order(@CustomerId OrderVO orderVO) {}
+
+        @RequiresRole(Roles.ADMIN)
+        public void withoutCustomerId(Long customerId) {}
+
+        public void notSecured() {}
+    }
+
+    @Test
+    public void resolve_whenCustomerIdIsANumber_shouldReadItFromTheAnnotatedArgument() throws NoSuchMethodException {
+        SecuredMethod securedMethod = SecuredMethodRegistry.resolve(
+                SecuredOperations.class.getMethod("update", String.class, Long.class));
+
+        assertThat(securedMethod.getCustomerId(new Object[]{"aCode", 7L})).isEqualTo(7L);
+        assertThat(securedMethod.isAllowed(Roles.EDITOR.mask())).isTrue();
+        assertThat(securedMethod.isAllowed(Roles.CLIENT.mask() | Roles.EXPEDITOR.mask())).isFalse();
+    }
+
+    @Test
+    public void resolve_whenCustomerIdIsAnOrder_shouldReadTheUserIdOfTheOrder() throws NoSuchMethodException {
+        SecuredMethod securedMethod = SecuredMethodRegistry.resolve(SecuredOperations.class.getMethod("order", OrderVO.class));
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId(3);
+
+        assertThat(securedMethod.getCustomerId(new Object[]{orderVO})).isEqualTo(3L);
+        assertThat(securedMethod.getCustomerId(new Object[]{new OrderVO()})).isNull();
+    }
+
+    @Test
+    public void resolve_whenMethodIsNotSecured_shouldReturnNull() throws NoSuchMethodException {
+        assertThat(SecuredMethodRegistry.resolve(SecuredOperations.class.getMethod("notSecured"))).isNull();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resolve_whenCustomerIdIsMissing_shouldFail() throws NoSuchMethodException {
+        SecuredMethodRegistry.resolve(SecuredOperations.class.getMethod("withoutCustomerId", Long.class));
+    }
+}
@@ -0,0 +1,50 @@
+package com.practice.onlineShop.cache;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringLruCacheTest {
+
+    private final ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2, 60);
+
+    @Test
+    public void finishLoad_whenAnotherKeyWasInvalidatedDuringTheLoad_shouldCacheTheValue() {
+        ExpiringLruCache.Load<String> load = cache.startLoad("a");
+        cache.invalidate("b");
+        cache.finishLoad(load, 1);
+
+        assertThat(cache.get("a")).isEqualTo(1);
+    }
+
+    @Test
+    public void finishLoad_whenTheKeyWasInvalidatedDuringTheLoad_shouldNotCacheTheValue() {
+        ExpiringLruCache.Load<String> load = cache.startLoad("a");
+        cache.invalidate("a");
+        cache.finishLoad(load, 1);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void putIfAbsent_whenMoreKeysThanMaxSize_shouldEvictTheLeastRecentlyUsed() {
+        cache.putIfAbsent("a", 1);
+        cache.putIfAbsent("b", 2);
+        cache.get("a");
+        cache.putIfAbsent("c", 3);
+
+        assertThat(cache.get("a")).isEqualTo(1);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_whenTheEntryExpired_shouldReturnNull() {
+        ExpiringLruCache<String, Integer> expiringCache = new ExpiringLruCache<>(2, 0);
+        expiringCache.putIfAbsent("a", 1);
+
+        assertThat(expiringCache.get("a")).isNull();
+        assertThat(expiringCache.putIfAbsent("a", 2)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,107 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.exceptions.IdempotencyKeyInProgressException;
+import com.practice.onlineShop.exceptions.IdempotencyKeyReusedException;
+import com.practice.onlineShop.exceptions.NotEnoughStockException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IdempotencyKeyStoreTest {
+
+    private final IdempotencyKeyStore idempotencyKeyStore = new IdempotencyKeyStore(100, 60, 1000);
+
+    @Test
+    public void execute_whenKeyIsRepeated_shouldReturnTheFirstResultWithoutRunningAgain() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        String first = idempotencyKeyStore.execute("key", "request", () -> "result" + calls.incrementAndGet());
+        String second = idempotencyKeyStore.execute("key", "request", () -> "result" + calls.incrementAndGet());
+
+        assertThat(first).isEqualTo("result1");
+        assertThat(second).isEqualTo("result1");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_whenFirstCallThrewACheckedException_shouldThrowItAgain() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ThrowingCallable<String, NotEnoughStockException> call = () -> {
+            calls.incrementAndGet();
+            throw new NotEnoughStockException();
+        };
+
+        assertThatThrownBy(() -> idempotencyKeyStore.execute("key", "request", call)).isInstanceOf(NotEnoughStockException.class);
+        assertThatThrownBy(() -> idempotencyKeyStore.execute("key", "request", call)).isInstanceOf(NotEnoughStockException.class);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_whenFirstCallThrewAnUncheckedException_shouldRunAgain() throws Exception {
+        assertThatThrownBy(() -> idempotencyKeyStore.execute("key", "request", () -> {
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(idempotencyKeyStore.execute("key", "request", () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    public void execute_whenKeyIsReusedForAnotherRequest_shouldThrowAnException() throws Exception {
+        idempotencyKeyStore.execute("key", "request", () -> "result");
+
+        assertThatThrownBy(() -> idempotencyKeyStore.execute("key", "anotherRequest", () -> "result"))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    public void execute_whenTheFirstRequestTakesTooLong_shouldStopWaitingForIt() throws Exception {
+        CountDownLatch firstCallStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstCall = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<String> first = executorService.submit(() -> idempotencyKeyStore.execute("key", "request", () -> {
+            firstCallStarted.countDown();
+            releaseFirstCall.await();
+            return "result";
+        }));
+        assertThat(firstCallStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> idempotencyKeyStore.execute("key", "request", () -> "duplicate"))
+                .isInstanceOf(IdempotencyKeyInProgressException.class);
+
+        releaseFirstCall.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(idempotencyKeyStore.execute("key", "request", () -> "duplicate")).isEqualTo("result");
+        executorService.shutdown();
+    }
+
+    @Test
+    public void execute_whenDuplicatesArriveConcurrently_shouldRunOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch firstCallStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstCall = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(() -> idempotencyKeyStore.execute("key", "request", () -> {
+                firstCallStarted.countDown();
+                releaseFirstCall.await();
+                return calls.incrementAndGet();
+            })));
+        }
+
+        firstCallStarted.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        releaseFirstCall.countDown();
+        for (Future<Integer> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        executorService.shutdown();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+}
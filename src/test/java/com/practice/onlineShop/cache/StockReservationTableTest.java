@@ -0,0 +1,75 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.cache.StockReservationTable.Reservation;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StockReservationTableTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final StockReservationTable stockReservationTable = new StockReservationTable(60, 16, 1000, 0);
+
+    @Test
+    public void put_whenUsersReserveTheSameProduct_shouldAddUpTheReservedStock() {
+        stockReservationTable.put(1, 10, "aCode", 2, 0);
+        stockReservationTable.put(2, 10, "aCode", 3, 0);
+        stockReservationTable.put(1, 10, "aCode", 1, 0);
+
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(4);
+        assertThat(stockReservationTable.getQuantity(1, 10)).isEqualTo(1);
+    }
+
+    @Test
+    public void expire_whenTheTtlHasPassed_shouldReleaseTheReservation() {
+        stockReservationTable.put(1, 10, "aCode", 2, 0);
+
+        assertThat(stockReservationTable.expire(59 * SECOND)).isEmpty();
+        List<Reservation> expired = stockReservationTable.expire(61 * SECOND);
+
+        assertThat(expired.size()).isEqualTo(1);
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(0);
+        assertThat(stockReservationTable.getCart(1)).isEmpty();
+    }
+
+    @Test
+    public void expire_whenTheLineWasChangedSince_shouldKeepItUntilItsNewDeadline() {
+        stockReservationTable.put(1, 10, "aCode", 2, 0);
+        stockReservationTable.put(1, 10, "aCode", 3, 30 * SECOND);
+
+        assertThat(stockReservationTable.expire(61 * SECOND)).isEmpty();
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(3);
+        assertThat(stockReservationTable.expire(91 * SECOND).size()).isEqualTo(1);
+    }
+
+    @Test
+    public void detach_whenCheckoutFails_shouldKeepTheStockReservedAndRestoreTheCart() {
+        stockReservationTable.put(1, 10, "aCode", 2, 0);
+        stockReservationTable.put(1, 11, "anotherCode", 1, 0);
+
+        List<Reservation> detached = stockReservationTable.detach(1);
+        assertThat(stockReservationTable.getCart(1)).isEmpty();
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(2);
+        assertThat(stockReservationTable.expire(30 * SECOND)).isEmpty();
+
+        List<Reservation> released = stockReservationTable.restore(detached, 30 * SECOND);
+
+        assertThat(released).isEmpty();
+        assertThat(stockReservationTable.getCart(1).size()).isEqualTo(2);
+        assertThat(stockReservationTable.expire(61 * SECOND).size()).isEqualTo(2);
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(0);
+    }
+
+    @Test
+    public void settle_whenCheckoutCommitted_shouldReleaseTheReservedStock() {
+        stockReservationTable.put(1, 10, "aCode", 2, 0);
+
+        stockReservationTable.settle(stockReservationTable.detach(1));
+
+        assertThat(stockReservationTable.getReserved(10)).isEqualTo(0);
+    }
+}
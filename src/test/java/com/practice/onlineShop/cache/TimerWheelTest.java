@@ -0,0 +1,52 @@
+package com.practice.onlineShop.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final TimerWheel<String> timerWheel = new TimerWheel<>(8, TICK_NANOS, 0);
+
+    @Test
+    public void advance_whenDeadlinesHavePassed_shouldReturnTheEntriesInTickOrder() {
+        timerWheel.schedule("late", 3 * TICK_NANOS);
+        timerWheel.schedule("early", TICK_NANOS);
+        timerWheel.schedule("notYet", 5 * TICK_NANOS);
+
+        assertThat(timerWheel.advance(TICK_NANOS / 2)).isEmpty();
+        assertThat(timerWheel.advance(4 * TICK_NANOS)).isEqualTo(Arrays.asList("early", "late"));
+        assertThat(timerWheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void advance_whenDeadlineIsMoreThanOneTurnAway_shouldKeepTheEntryUntilItsTick() {
+        timerWheel.schedule("nextTurn", 10 * TICK_NANOS);
+
+        assertThat(timerWheel.advance(8 * TICK_NANOS)).isEmpty();
+        assertThat(timerWheel.advance(10 * TICK_NANOS)).isEqualTo(Arrays.asList("nextTurn"));
+    }
+
+    @Test
+    public void advance_whenSweeperFellBehindSeveralTurns_shouldReturnEverythingThatExpired() {
+        for (int i = 1; i <= 20; i++) {
+            timerWheel.schedule("entry" + i, i * TICK_NANOS);
+        }
+
+        assertThat(timerWheel.advance(100 * TICK_NANOS).size()).isEqualTo(20);
+        assertThat(timerWheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void schedule_whenDeadlineHasAlreadyPassed_shouldExpireAtTheNextTick() {
+        timerWheel.advance(5 * TICK_NANOS);
+        timerWheel.schedule("overdue", TICK_NANOS);
+
+        assertThat(timerWheel.advance(6 * TICK_NANOS)).isEqualTo(Arrays.asList("overdue"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.practice.onlineShop.cache;
+
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.exceptions.InvalidCustomerIdException;
+import com.practice.onlineShop.repositories.UserRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class UserRolesCacheTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserRolesCache userRolesCache = new UserRolesCache(userRepository, 2, 60);
+
+    @Test
+    public void getRolesMask_whenCalledTwice_shouldQueryTheDbOnce() throws InvalidCustomerIdException {
+        when(userRepository.findRolesById(1L)).thenReturn(Arrays.asList(Roles.ADMIN, Roles.EXPEDITOR));
+
+        userRolesCache.getRolesMask(1L);
+        int rolesMask = userRolesCache.getRolesMask(1L);
+
+        assertThat(rolesMask).isEqualTo(Roles.ADMIN.mask() | Roles.EXPEDITOR.mask());
+        verify(userRepository, times(1)).findRolesById(1L);
+    }
+
+    @Test
+    public void getRolesMask_whenInvalidated_shouldReloadTheRoles() throws InvalidCustomerIdException {
+        when(userRepository.findRolesById(1L)).thenReturn(Collections.singletonList(Roles.CLIENT));
+        userRolesCache.getRolesMask(1L);
+
+        when(userRepository.findRolesById(1L)).thenReturn(Collections.singletonList(Roles.EDITOR));
+        userRolesCache.invalidate(1L);
+
+        assertThat(userRolesCache.getRolesMask(1L)).isEqualTo(Roles.EDITOR.mask());
+    }
+
+    @Test
+    public void getRolesMask_whenMoreUsersThanMaxSize_shouldEvictTheLeastRecentlyUsed() throws InvalidCustomerIdException {
+        when(userRepository.findRolesById(anyLong())).thenReturn(Collections.singletonList(Roles.CLIENT));
+
+        userRolesCache.getRolesMask(1L);
+        userRolesCache.getRolesMask(2L);
+        userRolesCache.getRolesMask(3L);
+        userRolesCache.getRolesMask(1L);
+
+        verify(userRepository, times(2)).findRolesById(1L);
+    }
+
+    @Test(expected = InvalidCustomerIdException.class)
+    public void getRolesMask_whenUserDoesNotExist_shouldThrowAnException() throws InvalidCustomerIdException {
+        when(userRepository.findRolesById(9L)).thenReturn(Collections.emptyList());
+        when(userRepository.existsById(9L)).thenReturn(false);
+
+        userRolesCache.getRolesMask(9L);
+    }
+}
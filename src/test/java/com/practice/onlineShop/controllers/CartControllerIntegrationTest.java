@@ -0,0 +1,174 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.utils.UtilsComponent;
+import com.practice.onlineShop.vos.CartItemVO;
+import com.practice.onlineShop.vos.CartVO;
+import com.practice.onlineShop.vos.OrderSummaryVO;
+import com.practice.onlineShop.vos.OrderVO;
+import com.practice.onlineShop.vos.ProductVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.OK;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CartControllerIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private UtilsComponent utilsComponent;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Test
+    public void setItem_whenStockIsAvailable_shouldReserveItForTheCart() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = saveProductWithStock("productForCart", 5);
+
+        ResponseEntity<CartVO> responseEntity = setItem(user, product, 3, CartVO.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(responseEntity.getBody().getItems().size()).isEqualTo(1);
+        assertThat(responseEntity.getBody().getItems().get(0).getQuantity()).isEqualTo(3);
+        assertThat(responseEntity.getBody().getItems().get(0).getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+        ProductVO productVO = getProduct(product);
+        assertThat(productVO.getStock()).isEqualTo(5);
+        assertThat(productVO.getAvailableStock()).isEqualTo(2);
+        clearCart(user);
+    }
+
+    @Test
+    public void setItem_whenStockIsHeldByAnotherCart_shouldThrowAnException() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User anotherUser = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = saveProductWithStock("productHeldByAnotherCart", 5);
+        setItem(anotherUser, product, 4, CartVO.class);
+
+        ResponseEntity<String> responseEntity = setItem(user, product, 2, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Un produs nu a avut stockul necesar!");
+        clearCart(anotherUser);
+    }
+
+    @Test
+    public void addOrder_whenStockIsReservedInACart_shouldNotTakeTheReservedStock() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User anotherUser = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = saveProductWithStock("productReservedBeforeOrder", 2);
+        setItem(anotherUser, product, 2, CartVO.class);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order",
+                createOrderVO(user, product), String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Un produs nu a avut stockul necesar!");
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(2);
+        clearCart(anotherUser);
+    }
+
+    @Test
+    public void checkout_whenCartHasReservations_shouldPlaceTheOrderAndReleaseThem() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = saveProductWithStock("productCheckedOut", 3);
+        Product anotherProduct = saveProductWithStock("anotherProductCheckedOut", 1);
+        setItem(user, product, 2, CartVO.class);
+        setItem(user, anotherProduct, 1, CartVO.class);
+
+        ResponseEntity<Long> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/cart/"
+                + user.getId() + "/checkout", null, Long.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        OrderSummaryVO orderSummary = orderRepository.findSummaryByIdAndUserId(responseEntity.getBody(), user.getId()).get();
+        assertThat(orderSummary.getTotals().get(Currencies.RON)).isEqualTo(300.0);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(1);
+        assertThat(productRepository.findById(anotherProduct.getId()).get().getStock()).isEqualTo(0);
+        assertThat(getProduct(product).getAvailableStock()).isEqualTo(1);
+        assertThat(testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/cart/" + user.getId(), CartVO.class)
+                .getItems().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void checkout_whenCartIsEmpty_shouldThrowAnException() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/cart/"
+                + user.getId() + "/checkout", null, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Comanda dumneavoastra nu contine niciun produs!");
+    }
+
+    @Test
+    public void startFlashSale_whenProductIsReservedInACart_shouldThrowAnException() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = saveProductWithStock("productReservedBeforeFlashSale", 5);
+        setItem(user, product, 1, CartVO.class);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/product/" + product.getCode() + "/flash-sale/" + admin.getId(), null, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(CONFLICT);
+        clearCart(user);
+    }
+
+    private Product saveProductWithStock(String productCode, int stock) {
+        Product product = utilsComponent.generateProduct(productCode);
+        product.setStock(stock);
+        return productRepository.save(product);
+    }
+
+    private <T> ResponseEntity<T> setItem(User user, Product product, int quantity, Class<T> responseType) {
+        CartItemVO cartItemVO = new CartItemVO();
+        cartItemVO.setProductId(product.getId());
+        cartItemVO.setQuantity(quantity);
+        return testRestTemplate.exchange(UtilsComponent.LOCALHOST + port + "/cart/" + user.getId(), HttpMethod.PUT,
+                new HttpEntity<>(cartItemVO), responseType);
+    }
+
+    private void clearCart(User user) {
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/cart/" + user.getId());
+    }
+
+    private ProductVO getProduct(Product product) {
+        return testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode(),
+                ProductVO.class);
+    }
+
+    private OrderVO createOrderVO(User user, Product product) {
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId((int) user.getId());
+        Map<Integer, Integer> orderMap = new HashMap<>();
+        orderMap.put((int) product.getId(), 1);
+        orderVO.setProductsIdsToQuantity(orderMap);
+        return orderVO;
+    }
+}
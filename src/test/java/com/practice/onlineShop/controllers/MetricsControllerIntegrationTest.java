@@ -0,0 +1,31 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.utils.UtilsComponent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MetricsControllerIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Test
+    public void getMetrics_afterAFailedRequest_shouldReportItsLatencyAndException() {
+        testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/product/anUnknownCodeForMetrics", String.class);
+
+        String metrics = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/metrics", String.class);
+
+        assertThat(metrics).contains("onlineshop_method_latency_seconds{method=\"ProductController.getProduct\",quantile=\"0.99\"}");
+        assertThat(metrics).contains("onlineshop_method_latency_seconds_count{method=\"ProductService.getProduct\"}");
+        assertThat(metrics).contains("onlineshop_method_errors_total{method=\"ProductController.getProduct\",exception=\"InvalidProductCodeException\"} ");
+    }
+}
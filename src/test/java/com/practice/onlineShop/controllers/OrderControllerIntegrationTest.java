@@ -4,10 +4,23 @@ import com.practice.onlineShop.entities.OrderItem;
 import com.practice.onlineShop.entities.Orders;
 import com.practice.onlineShop.entities.Product;
 import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
 import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.journal.StockJournal;
 import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.utils.SqlStatementCount;
 import com.practice.onlineShop.utils.UtilsComponent;
+import com.practice.onlineShop.vos.BulkDeliveryResultVO;
+import com.practice.onlineShop.vos.FlashSaleStatsVO;
+import com.practice.onlineShop.vos.OrderHistoryVO;
+import com.practice.onlineShop.vos.OrderResultVO;
+import com.practice.onlineShop.vos.OrderSummaryVO;
 import com.practice.onlineShop.vos.OrderVO;
+import com.practice.onlineShop.vos.ProductVO;
+import com.practice.onlineShop.vos.StockDiscrepancyVO;
+import com.practice.onlineShop.vos.StockReconciliationReportVO;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -15,8 +28,11 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,9 +40,13 @@ import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class OrderControllerIntegrationTest {
@@ -54,6 +74,12 @@ class OrderControllerIntegrationTest {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockJournal stockJournal;
+
     @Test
     @Transactional
     public void addOrder_whenOrderIsValid_shouldAddItToDB(){
@@ -76,6 +102,358 @@ class OrderControllerIntegrationTest {
 
 
 
+    @Test
+    public void addOrder_whenManyClientsOrderTheSameProductConcurrently_shouldNotOversell() throws Exception {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForConcurrentOrders");
+        product.setStock(20);
+        productRepository.save(product);
+
+        int numberOfOrders = 100;
+        AtomicInteger acceptedOrders = new AtomicInteger();
+        AtomicInteger rejectedOrders = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numberOfOrders; i++) {
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                        + "/order", createOrderVO(user, product), String.class);
+                if (responseEntity.getStatusCode() == OK) {
+                    acceptedOrders.incrementAndGet();
+                } else {
+                    assertThat(responseEntity.getBody()).isEqualTo("Un produs nu a avut stockul necesar!");
+                    rejectedOrders.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        assertThat(acceptedOrders.get()).isEqualTo(20);
+        assertThat(rejectedOrders.get()).isEqualTo(numberOfOrders - 20);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(0);
+    }
+
+    @Test
+    public void addOrder_whenProductHasShardedStockAndIsOrderedConcurrently_shouldNotOversell() throws Exception {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = createProductWithShardedStock("productWithShardedStock", 20, 4);
+
+        AtomicInteger acceptedOrders = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                        + "/order", createOrderVO(user, product), String.class);
+                if (responseEntity.getStatusCode() == OK) {
+                    acceptedOrders.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        assertThat(acceptedOrders.get()).isEqualTo(20);
+        assertThat(getProductStock(product)).isEqualTo(0);
+    }
+
+    @Test
+    public void addOrder_whenProductIsOnFlashSaleAndOrderedConcurrently_shouldNotOversell() throws Exception {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct("productOnFlashSale");
+        product.setStock(50);
+        productRepository.save(product);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode()
+                + "/flash-sale/" + admin.getId(), null, Void.class);
+
+        int numberOfOrders = 300;
+        AtomicInteger acceptedOrders = new AtomicInteger();
+        AtomicInteger rejectedOrders = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numberOfOrders; i++) {
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                        + "/order", createOrderVO(user, product), String.class);
+                if (responseEntity.getStatusCode() == OK) {
+                    acceptedOrders.incrementAndGet();
+                } else {
+                    assertThat(responseEntity.getBody()).isEqualTo("Un produs nu a avut stockul necesar!");
+                    rejectedOrders.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        ResponseEntity<String> soldOutResponse = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", createOrderVO(user, product), String.class);
+        FlashSaleStatsVO[] stats = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port
+                + "/product/flash-sale/stats", FlashSaleStatsVO[].class);
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/flash-sale/"
+                + admin.getId());
+
+        assertThat(acceptedOrders.get()).isEqualTo(50);
+        assertThat(rejectedOrders.get()).isEqualTo(numberOfOrders - 50);
+        assertThat(soldOutResponse.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(SqlStatementCount.of(soldOutResponse)).isEqualTo(0);
+        assertThat(stats.length).isEqualTo(1);
+        assertThat(stats[0].getAllocated()).isEqualTo(50);
+        assertThat(stats[0].getRemainingStock()).isEqualTo(0);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(0);
+        assertThat(getOrderedQuantity(product)).isEqualTo(50);
+    }
+
+    @Test
+    public void addOrders_whenProductIsOnFlashSale_shouldAllocateThroughTheSale() throws Exception {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct("productOnFlashSaleInBatch");
+        product.setStock(2);
+        productRepository.save(product);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode()
+                + "/flash-sale/" + admin.getId(), null, Void.class);
+
+        OrderResultVO[] results = testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/order/batch",
+                Arrays.asList(createOrderVO(user, product), createOrderVO(user, product), createOrderVO(user, product)),
+                OrderResultVO[].class);
+        int stockDuringSale = getProductStock(product);
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/flash-sale/"
+                + admin.getId());
+
+        assertThat(results[0].isAccepted()).isTrue();
+        assertThat(results[1].isAccepted()).isTrue();
+        assertThat(results[2].getError()).isEqualTo("NotEnoughStockException");
+        assertThat(stockDuringSale).isEqualTo(0);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(0);
+    }
+
+    @Test
+    public void addOrder_whenOrderForAProductOnFlashSaleIsRejected_shouldGiveTheAllocatedUnitsBack() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct("productOnFlashSaleWithRejectedOrders");
+        product.setStock(2);
+        productRepository.save(product);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode()
+                + "/flash-sale/" + admin.getId(), null, Void.class);
+        OrderVO orderVO = createOrderVO(user, product);
+        orderVO.getProductsIdsToQuantity().put(-1, 1);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+        OrderResultVO[] results = testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/order/batch",
+                Collections.singletonList(orderVO), OrderResultVO[].class);
+        // units given back are applied by the allocator of the sale, at the latest when the sale is stopped
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/flash-sale/"
+                + admin.getId());
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(results[0].getError()).isEqualTo("InvalidProductIdException");
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(2);
+    }
+
+    @Test
+    public void stopFlashSale_whenStockWasOrderedAndAddedDuringTheSale_shouldWriteBackAndJournalTheStockLeft() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = addProductAsAdmin(admin, "productWithStockAddedOnFlashSale", 5);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode()
+                + "/flash-sale/" + admin.getId(), null, Void.class);
+
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(user, product), Void.class);
+        restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/3/"
+                + admin.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/flash-sale/"
+                + admin.getId());
+
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(7);
+        assertThat(stockJournal.getStock(product.getId())).isEqualTo(7L);
+        assertThat(stockJournal.getAdjustments(product.getId())).isEqualTo(8L);
+        assertThat(getProductStock(product)).isEqualTo(7);
+        assertThat(getDiscrepancy(reconcileStock(admin, false), product)).isNull();
+    }
+
+    @Test
+    public void addOrder_whenNoSingleStockShardHasEnoughStock_shouldTakeItFromSeveralShards(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = createProductWithShardedStock("productWithSmallStockShards", 10, 4);
+        OrderVO orderVO = createOrderVO(user, product);
+        orderVO.getProductsIdsToQuantity().put((int) product.getId(), 7);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+        OrderResultVO[] results = testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/order/batch",
+                Arrays.asList(createOrderVO(user, product), orderVO), OrderResultVO[].class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(results[0].isAccepted()).isTrue();
+        assertThat(results[1].getError()).isEqualTo("NotEnoughStockException");
+        assertThat(getProductStock(product)).isEqualTo(2);
+    }
+
+    @Test
+    public void addOrder_whenOneLineHasNotEnoughStock_shouldRollbackTheWholeOrder(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForRollback1");
+        product.setStock(5);
+        productRepository.save(product);
+        Product productWithoutStock = utilsComponent.generateProduct("productForRollback2");
+        productWithoutStock.setStock(0);
+        productRepository.save(productWithoutStock);
+
+        OrderVO orderVO = createOrderVO(user, product);
+        orderVO.getProductsIdsToQuantity().put((int) productWithoutStock.getId(), 1);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(5);
+    }
+
+    @Test
+    public void addOrder_whenOrderHasTwentyLines_shouldIssueABoundedNumberOfStatements(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId((int) user.getId());
+        orderVO.setProductsIdsToQuantity(new HashMap<>());
+        for (int i = 0; i < 20; i++) {
+            Product product = utilsComponent.generateProduct("productForStatementCount" + i);
+            product.setStock(10);
+            productRepository.save(product);
+            orderVO.getProductsIdsToQuantity().put((int) product.getId(), 1);
+        }
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(SqlStatementCount.of(responseEntity)).isLessThanOrEqualTo(20 + 5);
+    }
+
+    @Test
+    public void addOrder_whenSomeProductIdsAreUnknown_shouldReportAllOfThem(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("productForUnknownIds1", "productForUnknownIds2");
+
+        OrderVO orderVO = createOrderVO(user, product);
+        orderVO.getProductsIdsToQuantity().put(-2, 1);
+        orderVO.getProductsIdsToQuantity().put(-1, 1);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Id-urile urmatoarelor produse nu sunt valide in comanda curenta: [-2, -1]");
+    }
+
+    @Test
+    public void addOrders_whenBatchHasValidAndInvalidOrders_shouldReportEachOrder(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct("productForOrderBatch");
+        product.setStock(3);
+        productRepository.save(product);
+
+        OrderVO firstOrder = createOrderVO(client, product);
+        firstOrder.getProductsIdsToQuantity().put((int) product.getId(), 2);
+        OrderVO secondOrder = createOrderVO(client, product);
+        secondOrder.getProductsIdsToQuantity().put((int) product.getId(), 2);
+        OrderVO adminOrder = createOrderVO(admin, product);
+
+        ResponseEntity<OrderResultVO[]> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/batch", Arrays.asList(firstOrder, secondOrder, adminOrder), OrderResultVO[].class);
+
+        OrderResultVO[] results = responseEntity.getBody();
+        assertThat(results.length).isEqualTo(3);
+        assertThat(results[0].isAccepted()).isTrue();
+        assertThat(orderRepository.findById(results[0].getOrderId())).isPresent();
+        assertThat(results[1].isAccepted()).isFalse();
+        assertThat(results[1].getError()).isEqualTo("NotEnoughStockException");
+        assertThat(results[2].isAccepted()).isFalse();
+        assertThat(results[2].getError()).isEqualTo("InvalidOperationException");
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(1);
+    }
+
+    @Test
+    public void addOrders_whenBatchHasFiftyOrders_shouldIssueABoundedNumberOfStatements(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForLargeOrderBatch");
+        product.setStock(100);
+        productRepository.save(product);
+        List<OrderVO> orderVOs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            orderVOs.add(createOrderVO(client, product));
+        }
+
+        ResponseEntity<OrderResultVO[]> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/batch", orderVOs, OrderResultVO[].class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(Arrays.stream(responseEntity.getBody()).allMatch(OrderResultVO::isAccepted)).isTrue();
+        assertThat(SqlStatementCount.of(responseEntity)).isLessThanOrEqualTo(10);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(50);
+    }
+
+    @Test
+    public void addOrder_whenRetriedWithTheSameIdempotencyKey_shouldPlaceTheOrderOnce(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForIdempotentOrder");
+        product.setStock(5);
+        productRepository.save(product);
+        long ordersBefore = orderRepository.count();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(OrderController.IDEMPOTENCY_KEY_HEADER, "aRetriedOrder");
+        HttpEntity<OrderVO> request = new HttpEntity<>(createOrderVO(user, product), headers);
+
+        ResponseEntity<String> firstResponse = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order",
+                request, String.class);
+        ResponseEntity<String> retriedResponse = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order",
+                request, String.class);
+
+        assertThat(firstResponse.getStatusCode()).isEqualTo(OK);
+        assertThat(retriedResponse.getStatusCode()).isEqualTo(OK);
+        assertThat(orderRepository.count()).isEqualTo(ordersBefore + 1);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(4);
+    }
+
+    @Test
+    public void addOrder_whenIdempotencyKeyIsReusedForAnotherOrder_shouldReturnUnprocessableEntity(){
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("productForReusedKey1", "productForReusedKey2");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(OrderController.IDEMPOTENCY_KEY_HEADER, "aReusedKey");
+        OrderVO orderVO = createOrderVO(user, product);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", new HttpEntity<>(orderVO, headers), String.class);
+
+        orderVO.getProductsIdsToQuantity().put((int) product.getId(), 2);
+        ResponseEntity<String> response = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order",
+                new HttpEntity<>(orderVO, headers), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(UNPROCESSABLE_ENTITY);
+        assertThat(response.getBody()).isEqualTo("Cheia de idempotenta a fost folosita pentru o alta comanda!");
+    }
+
     @Test
     public void addOrder_whenRequestIsMadeByAdmin_shouldThrowAnException(){
         User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
@@ -117,7 +495,7 @@ class OrderControllerIntegrationTest {
                 + expeditor.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class );
 
         Orders orderFromDB = orderRepository.findById(orderWithProducts.getId()).get();
-        assertThat(orderFromDB.isDelivered()).isTrue();
+        assertThat(orderFromDB.getStatus()).isEqualTo(OrderStatus.DELIVERED);
     }
 
 
@@ -162,7 +540,7 @@ class OrderControllerIntegrationTest {
         Product product = utilsComponent.storeTwoProductsInDatabase("code1ForExpeditorForCanceledOrder", "code2ForExpeditorForCanceledOrder");
 
         Orders orderWithProducts = generateOrderItems(product, client);
-        orderWithProducts.setCanceled(true);
+        orderWithProducts.setStatus(OrderStatus.CANCELED);
         orderRepository.save(orderWithProducts);
 
         try {
@@ -173,13 +551,219 @@ class OrderControllerIntegrationTest {
         }
     }
 
+    @Test
+    public void deliver_whenOrderIsPlaced_shouldChangeTheStatusWithOneUpdate(){
+        User expeditor = utilsComponent.saveUserWithRole(Roles.EXPEDITOR);
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("code1ForSingleUpdateDeliver", "code2ForSingleUpdateDeliver");
+        Orders order = utilsComponent.saveOrder(client, product);
+        restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/order/" + order.getId() + "/"
+                + expeditor.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
+        Orders secondOrder = utilsComponent.saveOrder(client, product);
+
+        ResponseEntity<Void> responseEntity = restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/order/"
+                + secondOrder.getId() + "/" + expeditor.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
+
+        assertThat(SqlStatementCount.of(responseEntity)).isEqualTo(1);
+        assertThat(orderRepository.findStatusById(secondOrder.getId()).get()).isEqualTo(OrderStatus.DELIVERED);
+    }
+
+    @Test
+    public void deliverAndCancel_whenRacingOnTheSameOrder_shouldLetExactlyOneWin() throws Exception {
+        User expeditor = utilsComponent.saveUserWithRole(Roles.EXPEDITOR);
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("code1ForRacingOrders", "code2ForRacingOrders");
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 20; i++) {
+            Orders order = utilsComponent.saveOrder(client, product);
+            CountDownLatch startLatch = new CountDownLatch(1);
+            Future<HttpStatus> deliver = executorService.submit(() -> {
+                startLatch.await();
+                return testRestTemplate.exchange(UtilsComponent.LOCALHOST + port + "/order/" + order.getId() + "/"
+                        + expeditor.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, String.class).getStatusCode();
+            });
+            Future<HttpStatus> cancel = executorService.submit(() -> {
+                startLatch.await();
+                return testRestTemplate.exchange(UtilsComponent.LOCALHOST + port + "/order/cancel/" + order.getId() + "/"
+                        + client.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, String.class).getStatusCode();
+            });
+            startLatch.countDown();
+
+            boolean delivered = deliver.get(10, TimeUnit.SECONDS) == OK;
+            boolean canceled = cancel.get(10, TimeUnit.SECONDS) == OK;
+            assertThat(delivered ^ canceled).isTrue();
+            assertThat(orderRepository.findStatusById(order.getId()).get())
+                    .isEqualTo(delivered ? OrderStatus.DELIVERED : OrderStatus.CANCELED);
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void deliverOrders_whenRouteHasPlacedCanceledAndUnknownOrders_shouldDeliverThePlacedOnes(){
+        User expeditor = utilsComponent.saveUserWithRole(Roles.EXPEDITOR);
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("code1ForBulkDeliver", "code2ForBulkDeliver");
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            orderIds.add(utilsComponent.saveOrder(client, product).getId());
+        }
+        Orders canceledOrder = utilsComponent.saveCanceledOrder(client, product);
+        orderIds.add(canceledOrder.getId());
+        orderIds.add(-1L);
+
+        ResponseEntity<BulkDeliveryResultVO> responseEntity = restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port
+                + "/order/deliver/" + expeditor.getId(), HttpMethod.PATCH, new HttpEntity<>(orderIds), BulkDeliveryResultVO.class);
+
+        BulkDeliveryResultVO result = responseEntity.getBody();
+        assertThat(result.getDelivered()).isEqualTo(3);
+        assertThat(result.getCanceledOrderIds()).isEqualTo(Collections.singletonList(canceledOrder.getId()));
+        assertThat(result.getUnknownOrderIds()).isEqualTo(Collections.singletonList(-1L));
+        assertThat(orderRepository.findStatusById(orderIds.get(0)).get()).isEqualTo(OrderStatus.DELIVERED);
+        assertThat(SqlStatementCount.of(responseEntity)).isLessThanOrEqualTo(2 + 2);
+    }
+
+    @Test
+    public void deliverOrders_whenUserIsClient_shouldThrowAnException(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("code1ForBulkDeliverByClient", "code2ForBulkDeliverByClient");
+        Orders order = utilsComponent.saveOrder(client, product);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.exchange(UtilsComponent.LOCALHOST + port + "/order/deliver/"
+                + client.getId(), HttpMethod.PATCH, new HttpEntity<>(Collections.singletonList(order.getId())), String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Utilizatorul nu are persimiunea de a executa aceasta operatiune!");
+        assertThat(orderRepository.findStatusById(order.getId()).get()).isEqualTo(OrderStatus.PLACED);
+    }
+
+    @Test
+    public void getOrders_whenUserHasManyOrders_shouldLoadEachPageInTwoQueries(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        List<Orders> orders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Product product = utilsComponent.storeTwoProductsInDatabase("productForOrderHistory" + i, "otherProductForOrderHistory" + i);
+            orders.add(utilsComponent.saveOrder(client, product));
+        }
+
+        ResponseEntity<OrderHistoryVO[]> firstPage = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/user/" + client.getId() + "?limit=3", OrderHistoryVO[].class);
+        OrderHistoryVO lastOfFirstPage = firstPage.getBody()[2];
+        ResponseEntity<OrderHistoryVO[]> secondPage = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/user/" + client.getId() + "?limit=3&after=" + lastOfFirstPage.getId(), OrderHistoryVO[].class);
+
+        assertThat(firstPage.getBody().length).isEqualTo(3);
+        assertThat(lastOfFirstPage.getId()).isEqualTo(orders.get(2).getId());
+        assertThat(secondPage.getBody().length).isEqualTo(2);
+        assertThat(secondPage.getBody()[1].getOrderItems().get(0).getProductCode()).isEqualTo("productForOrderHistory4");
+        assertThat(SqlStatementCount.of(secondPage)).isEqualTo(2);
+    }
+
+    @Test
+    public void getOrders_whenFilteringByStatus_shouldReturnOnlyMatchingOrders(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.storeTwoProductsInDatabase("productForOrderHistoryByStatus1", "productForOrderHistoryByStatus2");
+        utilsComponent.saveOrder(client, product);
+        Orders canceledOrder = utilsComponent.saveCanceledOrder(client, product);
+
+        OrderHistoryVO[] orders = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/order/user/"
+                + client.getId() + "?status=CANCELED", OrderHistoryVO[].class);
+
+        assertThat(orders.length).isEqualTo(1);
+        assertThat(orders[0].getId()).isEqualTo(canceledOrder.getId());
+        assertThat(orders[0].getStatus()).isEqualTo(OrderStatus.CANCELED);
+    }
+
+    @Test
+    public void getOrderSummary_whenOrderBelongsToAnotherClient_shouldReturnErrorMessage(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User anotherClient = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForAnotherClientsSummary");
+        product.setStock(5);
+        productRepository.save(product);
+        OrderResultVO[] results = testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/order/batch",
+                Collections.singletonList(createOrderVO(client, product)), OrderResultVO[].class);
+
+        ResponseEntity<String> summary = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/summary/" + results[0].getOrderId() + "/" + anotherClient.getId(), String.class);
+
+        assertThat(summary.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(summary.getBody()).isEqualTo("Id-ul comenzii nu este valid!");
+    }
+
+    @Test
+    public void addOrder_whenQuantityIsNotPositive_shouldReturnErrorMessageAndKeepTheStock(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productOrderedWithNegativeQuantity");
+        product.setStock(5);
+        productRepository.save(product);
+        OrderVO orderVO = createOrderVO(client, product);
+        orderVO.getProductsIdsToQuantity().put((int) product.getId(), -3);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", orderVO, String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).isEqualTo("Comanda dumneavoastra nu contine niciun produs!");
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(5);
+    }
+
+    @Test
+    public void addOrder_whenProductHasNoCurrency_shouldReturnErrorMessage(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productWithoutCurrency");
+        product.setCurrency(null);
+        product.setStock(5);
+        productRepository.save(product);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", createOrderVO(client, product), String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(responseEntity.getBody()).contains(String.valueOf(product.getId()));
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(5);
+    }
+
+    @Test
+    public void getOrderSummary_whenProductPriceChangesAfterPlacement_shouldKeepThePlacementTotal(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct("productForPriceSnapshot");
+        product.setStock(5);
+        product.setPrice(30);
+        product.setCurrency(Currencies.EUR);
+        productRepository.save(product);
+        OrderVO orderVO = createOrderVO(client, product);
+        orderVO.getProductsIdsToQuantity().put((int) product.getId(), 2);
+        Map<String, Double> revenueBefore = getRevenue(admin);
+
+        OrderResultVO[] results = testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/order/batch",
+                Collections.singletonList(orderVO), OrderResultVO[].class);
+        Product productAfterPlacement = productRepository.findById(product.getId()).get();
+        productAfterPlacement.setPrice(45);
+        productRepository.save(productAfterPlacement);
+
+        ResponseEntity<OrderSummaryVO> summary = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/summary/" + results[0].getOrderId() + "/" + client.getId(), OrderSummaryVO.class);
+        assertThat(summary.getBody().getTotals()).isEqualTo(Collections.singletonMap(Currencies.EUR, 60.0));
+        assertThat(SqlStatementCount.of(summary)).isLessThanOrEqualTo(1 + 2);
+
+        OrderHistoryVO[] orders = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/order/user/"
+                + client.getId(), OrderHistoryVO[].class);
+        assertThat(orders[0].getOrderItems().get(0).getUnitPrice()).isEqualTo(30.0);
+        assertThat(orders[0].getOrderItems().get(0).getCurrency()).isEqualTo(Currencies.EUR);
+
+        Map<String, Double> revenueAfter = getRevenue(admin);
+        assertThat(revenueAfter.get("EUR") - revenueBefore.getOrDefault("EUR", 0.0)).isEqualTo(60.0);
+    }
+
     @Test
     public void cancel_whenValidOrder_shouldCancelIt(){
         User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
         Product product = utilsComponent.storeTwoProductsInDatabase("productForCancelOrder1", "productForCancelOrder2");
 
         Orders orderWithProducts = generateOrderItems(product, client);
-        orderWithProducts.setCanceled(true);
+        orderWithProducts.setStatus(OrderStatus.CANCELED);
         orderRepository.save(orderWithProducts);
 
         restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/order/cancel/" + orderWithProducts.getId() + "/"
@@ -187,8 +771,25 @@ class OrderControllerIntegrationTest {
 
         Orders orderFromDB = orderRepository.findById(orderWithProducts.getId()).get();
 
-        assertThat(orderFromDB.isCanceled()).isTrue();
+        assertThat(orderFromDB.getStatus()).isEqualTo(OrderStatus.CANCELED);
+
+    }
+
+    @Test
+    public void cancel_whenOrderIsPlaced_shouldGiveItsStockBack(){
+        User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = addProductAsAdmin(admin, "productForCanceledStock", 5);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(client, product), Void.class);
+        Long orderId = orderRepository.findIdPageByUserIdAfter(client.getId(), 0, null, PageRequest.of(0, 1)).get(0);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(4);
+
+        restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/order/cancel/" + orderId + "/"
+                + client.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
 
+        assertThat(orderRepository.findStatusById(orderId).get()).isEqualTo(OrderStatus.CANCELED);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(5);
+        assertThat(getDiscrepancy(reconcileStock(admin, false), product)).isNull();
     }
 
     @Test
@@ -197,7 +798,7 @@ class OrderControllerIntegrationTest {
         Product product = utilsComponent.storeTwoProductsInDatabase("productForCancelSentOrder1", "productForCancelSentOrder2");
 
         Orders orderWithProducts = generateOrderItems(product, client);
-        orderWithProducts.setCanceled(true);
+        orderWithProducts.setStatus(OrderStatus.CANCELED);
         orderRepository.save(orderWithProducts);
 
         try {
@@ -255,7 +856,7 @@ class OrderControllerIntegrationTest {
 
         Orders orderFromDB = orderRepository.findById(orderWithProducts.getId()).get();
 
-        assertThat(orderFromDB.isReturned()).isTrue();
+        assertThat(orderFromDB.getStatus()).isEqualTo(OrderStatus.RETURNED);
         assertThat(orderFromDB.getOrderItems().get(0).getProduct().getStock()).isEqualTo(product.getStock()
         + orderWithProducts.getOrderItems().get(0).getQuantity());
     }
@@ -278,7 +879,7 @@ class OrderControllerIntegrationTest {
     public void return_whenOrderIsCanceled_shouldThrowAnException(){
         User client = utilsComponent.saveUserWithRole(Roles.CLIENT);
         Product product = utilsComponent.storeTwoProductsInDatabase("productCanceledForReturn1", "productCanceledForReturn2");
-        Orders orderWithProducts = utilsComponent.saveCanceledAndDeliveredOrder(client, product);
+        Orders orderWithProducts = utilsComponent.saveCanceledOrder(client, product);
 
         try {
             restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/order/return/" + orderWithProducts.getId() + "/"
@@ -317,6 +918,71 @@ class OrderControllerIntegrationTest {
     }
 
 
+    private Product createProductWithShardedStock(String productCode, int stock, int stockShards) {
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = utilsComponent.generateProduct(productCode);
+        product.setStock(stock);
+        productRepository.save(product);
+        restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/product/" + productCode + "/shards/" + stockShards
+                + "/" + admin.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
+        return productRepository.findById(product.getId()).get();
+    }
+
+    private int getOrderedQuantity(Product product) {
+        int orderedQuantity = 0;
+        for (Orders order : orderRepository.findAllWithItemsByIdIn(getOrderIds())) {
+            for (OrderItem orderItem : order.getOrderItems()) {
+                if (orderItem.getProduct().getId() == product.getId()) {
+                    orderedQuantity += orderItem.getQuantity();
+                }
+            }
+        }
+        return orderedQuantity;
+    }
+
+    private Product addProductAsAdmin(User admin, String productCode, int stock) {
+        ProductVO productVO = new ProductVO();
+        productVO.setCode(productCode);
+        productVO.setPrice(10);
+        productVO.setCurrency(Currencies.RON);
+        productVO.setStock(stock);
+        productVO.setDescription("a product added by an admin");
+        productVO.setValid(true);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + admin.getId(), productVO, Void.class);
+        return productRepository.findByCode(productCode).get();
+    }
+
+    private StockReconciliationReportVO reconcileStock(User admin, boolean autoCorrect) {
+        ResponseEntity<StockReconciliationReportVO> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST
+                + port + "/product/stock-reconciliation/" + admin.getId() + "?autoCorrect=" + autoCorrect, null,
+                StockReconciliationReportVO.class);
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        return responseEntity.getBody();
+    }
+
+    private StockDiscrepancyVO getDiscrepancy(StockReconciliationReportVO report, Product product) {
+        return report.getDiscrepancyDetails().stream()
+                .filter(discrepancy -> discrepancy.getProductId() == product.getId())
+                .findFirst()
+                .orElse(null);
+    }
+
+    private List<Long> getOrderIds() {
+        List<Long> orderIds = new ArrayList<>();
+        orderRepository.findAll().forEach(order -> orderIds.add(order.getId()));
+        return orderIds;
+    }
+
+    private int getProductStock(Product product) {
+        return testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode(),
+                ProductVO.class).getStock();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> getRevenue(User admin) {
+        return testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/order/revenue/" + admin.getId(), Map.class);
+    }
+
     private OrderVO createOrderVO(User user, Product product) {
         OrderVO orderVO = new OrderVO();
         orderVO.setUserId((int) user.getId());
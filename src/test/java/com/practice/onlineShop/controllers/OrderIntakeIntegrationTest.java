@@ -0,0 +1,116 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.OrderIntakeStatus;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.repositories.OrderRepository;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.utils.UtilsComponent;
+import com.practice.onlineShop.vos.OrderIntakeStatsVO;
+import com.practice.onlineShop.vos.OrderTokenVO;
+import com.practice.onlineShop.vos.OrderVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.ResponseEntity;
+
+import java.util.HashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+// a single worker places the orders in the order they were submitted
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"order.intake.async.enabled=true", "order.intake.workers=1"})
+class OrderIntakeIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private UtilsComponent utilsComponent;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    public void addOrder_whenIntakeIsAsync_shouldReturnATokenAndAcceptTheOrderLater() throws InterruptedException {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        Product product = utilsComponent.generateProduct("productForAsyncOrder");
+        product.setStock(1);
+        productRepository.save(product);
+
+        ResponseEntity<OrderTokenVO> firstResponse = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", createOrderVO(user, product), OrderTokenVO.class);
+        ResponseEntity<OrderTokenVO> secondResponse = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/order", createOrderVO(user, product), OrderTokenVO.class);
+
+        assertThat(firstResponse.getStatusCode()).isEqualTo(ACCEPTED);
+        assertThat(firstResponse.getBody().getStatus()).isEqualTo(OrderIntakeStatus.QUEUED);
+        OrderTokenVO firstStatus = waitForOutcome(firstResponse.getBody().getToken());
+        OrderTokenVO secondStatus = waitForOutcome(secondResponse.getBody().getToken());
+
+        assertThat(firstStatus.getStatus()).isEqualTo(OrderIntakeStatus.ACCEPTED);
+        assertThat(orderRepository.findById(firstStatus.getOrderId())).isPresent();
+        assertThat(secondStatus.getStatus()).isEqualTo(OrderIntakeStatus.REJECTED);
+        assertThat(secondStatus.getError()).isEqualTo("NotEnoughStockException");
+
+        OrderIntakeStatsVO stats = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/order/intake/stats",
+                OrderIntakeStatsVO.class);
+        assertThat(stats.isEnabled()).isTrue();
+        assertThat(stats.getDrained()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    public void addOrder_whenIntakeIsAsyncAndOrderHasNoProducts_shouldBeRefusedRightAway() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId((int) user.getId());
+        orderVO.setProductsIdsToQuantity(new HashMap<>());
+
+        ResponseEntity<String> response = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order",
+                orderVO, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(response.getBody()).isEqualTo("Comanda dumneavoastra nu contine niciun produs!");
+    }
+
+    @Test
+    public void getOrderStatus_whenTokenIsUnknown_shouldReturnBadRequest() {
+        ResponseEntity<String> response = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port
+                + "/order/status/anUnknownToken", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(response.getBody()).isEqualTo("Token-ul comenzii nu este valid!");
+    }
+
+    private OrderTokenVO waitForOutcome(String token) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            OrderTokenVO status = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/order/status/" + token,
+                    OrderTokenVO.class);
+            if (status.getStatus() != OrderIntakeStatus.QUEUED) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("order " + token + " was not processed");
+    }
+
+    private OrderVO createOrderVO(User user, Product product) {
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId((int) user.getId());
+        orderVO.setProductsIdsToQuantity(new HashMap<>());
+        orderVO.getProductsIdsToQuantity().put((int) product.getId(), 1);
+        return orderVO;
+    }
+}
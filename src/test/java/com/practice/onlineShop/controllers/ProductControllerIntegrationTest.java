@@ -5,8 +5,10 @@ import com.practice.onlineShop.entities.Product;
 import com.practice.onlineShop.entities.User;
 import com.practice.onlineShop.enums.Currencies;
 import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.metrics.MetricsRegistry;
 import com.practice.onlineShop.repositories.ProductRepository;
 import com.practice.onlineShop.repositories.UserRepository;
+import com.practice.onlineShop.vos.ProductImportReportVO;
 import com.practice.onlineShop.vos.ProductVO;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,17 +18,24 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import com.practice.onlineShop.utils.SqlStatementCount;
 import com.practice.onlineShop.utils.UtilsComponent;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -60,6 +69,9 @@ class ProductControllerIntegrationTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
     @Autowired
     private UtilsComponent utilsComponent;
 
@@ -172,6 +184,177 @@ class ProductControllerIntegrationTest {
         assertThat(products[1].getCode()).contains("aWonderfulCode2500");
     }
 
+    @Test
+    public void getProducts_whenAfterAndLimitAreSent_shouldReturnTheNextPage(){
+        productRepository.deleteAll();
+        Product firstProduct = utilsComponent.storeTwoProductsInDatabase("aPagedCode1", "aPagedCode2");
+        utilsComponent.storeTwoProductsInDatabase("aPagedCode3", "aPagedCode4");
+
+        ProductVO[] products = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/product?after="
+                + firstProduct.getId() + "&limit=2", ProductVO[].class);
+
+        assertThat(products).hasSize(2);
+        assertThat(products[0].getCode()).isEqualTo("aPagedCode2");
+        assertThat(products[1].getCode()).isEqualTo("aPagedCode3");
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void getProducts_whenFilteringByCurrency_shouldReturnOnlyMatchingProducts(){
+        productRepository.deleteAll();
+        utilsComponent.storeTwoProductsInDatabase("aRonCode1", "aRonCode2");
+        Product eurProduct = utilsComponent.generateProduct("anEurCode");
+        eurProduct.setCurrency(Currencies.EUR);
+        productRepository.save(eurProduct);
+        Product invalidEurProduct = utilsComponent.generateProduct("anInvalidEurCode");
+        invalidEurProduct.setCurrency(Currencies.EUR);
+        invalidEurProduct.setValid(false);
+        productRepository.save(invalidEurProduct);
+
+        ProductVO[] products = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port + "/product?currency=EUR",
+                ProductVO[].class);
+        ProductVO[] validProducts = testRestTemplate.getForObject(UtilsComponent.LOCALHOST + port
+                + "/product?currency=EUR&valid=true", ProductVO[].class);
+
+        assertThat(products).extracting(ProductVO::getCode).containsExactly("anEurCode", "anInvalidEurCode");
+        assertThat(products).allMatch(product -> product.getCurrency() == Currencies.EUR);
+        assertThat(validProducts).extracting(ProductVO::getCode).containsExactly("anEurCode");
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void exportProducts_shouldStreamOneProductPerLine(){
+        productRepository.deleteAll();
+        utilsComponent.storeTwoProductsInDatabase("anExportedCode1", "anExportedCode2");
+
+        ResponseEntity<String> response = testRestTemplate.getForEntity(UtilsComponent.LOCALHOST + port + "/product/export",
+                String.class);
+
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo("application/x-ndjson");
+        // the headers go out with the first line, after the query that read it
+        assertThat(SqlStatementCount.of(response)).isGreaterThanOrEqualTo(1);
+        String[] lines = response.getBody().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("anExportedCode1");
+        assertThat(lines[1]).contains("anExportedCode2");
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenJsonContainsNewExistingAndInvalidRows_shouldReportEachRow(){
+        productRepository.deleteAll();
+        utilsComponent.storeTwoProductsInDatabase("anImportedCode1", "anImportedCode2");
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        String body = "[{\"code\":\"anImportedCode1\",\"price\":99,\"stock\":7,\"valid\":true,\"currency\":\"RON\"},"
+                + "{\"code\":\"anImportedCode3\",\"price\":5,\"stock\":1,\"valid\":true,\"currency\":\"EUR\"},"
+                + "{\"code\":\"anImportedCode4\",\"price\":-1,\"stock\":1,\"currency\":\"EUR\"}]";
+
+        ProductImportReportVO report = importProducts(user, body, MediaType.APPLICATION_JSON);
+
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(report.getUpdated()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting("row", "code").containsExactly(tuple(3L, "anImportedCode4"));
+        assertThat(productRepository.findByCode("anImportedCode1").get().getStock()).isEqualTo(7);
+        assertThat(productRepository.findByCode("anImportedCode3")).isPresent();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenCsvIsSent_shouldCreateTheProducts(){
+        productRepository.deleteAll();
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        String body = "code,description,price,stock,valid,currency\n"
+                + "aCsvCode1,\"a description, with a comma\",10.5,3,true,RON\n"
+                + "aCsvCode2,,20,notANumber,true,RON\n";
+
+        ProductImportReportVO report = importProducts(user, body, MediaType.parseMediaType("text/csv"));
+
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        Product product = productRepository.findByCode("aCsvCode1").get();
+        assertThat(product.getDescription()).isEqualTo("a description, with a comma");
+        assertThat(product.getPrice()).isEqualTo(10.5);
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenCsvHasNoStockColumn_shouldKeepTheStockOfExistingProducts(){
+        productRepository.deleteAll();
+        utilsComponent.storeTwoProductsInDatabase("aCsvCodeWithStock1", "aCsvCodeWithStock2");
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        String body = "code,price,currency\n"
+                + "aCsvCodeWithStock1,25,RON\n";
+
+        ProductImportReportVO report = importProducts(user, body, MediaType.parseMediaType("text/csv"));
+
+        assertThat(report.getUpdated()).isEqualTo(1);
+        Product product = productRepository.findByCode("aCsvCodeWithStock1").get();
+        assertThat(product.getPrice()).isEqualTo(25.0);
+        assertThat(product.getStock()).isEqualTo(1);
+        assertThat(product.getDescription()).isEqualTo("a description");
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenProductIsOnFlashSale_shouldIgnoreItsStockAndReportTheRow(){
+        productRepository.deleteAll();
+        utilsComponent.storeTwoProductsInDatabase("aCsvCodeOnFlashSale", "aCsvCodeNotOnFlashSale");
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/aCsvCodeOnFlashSale/flash-sale/"
+                + user.getId(), null, Void.class);
+        String body = "code,price,stock,currency\n"
+                + "aCsvCodeOnFlashSale,25,40,RON\n"
+                + "aCsvCodeNotOnFlashSale,25,40,RON\n";
+
+        ProductImportReportVO report = importProducts(user, body, MediaType.parseMediaType("text/csv"));
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/aCsvCodeOnFlashSale/flash-sale/" + user.getId());
+
+        assertThat(report.getUpdated()).isEqualTo(2);
+        assertThat(report.getStockIgnored()).isEqualTo(1);
+        assertThat(report.getWarnings()).extracting("row", "code").containsExactly(tuple(1L, "aCsvCodeOnFlashSale"));
+        Product productOnFlashSale = productRepository.findByCode("aCsvCodeOnFlashSale").get();
+        assertThat(productOnFlashSale.getPrice()).isEqualTo(25.0);
+        assertThat(productOnFlashSale.getStock()).isEqualTo(1);
+        assertThat(productRepository.findByCode("aCsvCodeNotOnFlashSale").get().getStock()).isEqualTo(40);
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenOneRowOfABatchCanNotBeSaved_shouldSaveTheOtherRows(){
+        productRepository.deleteAll();
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        StringBuilder tooLongDescription = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            tooLongDescription.append('x');
+        }
+        String body = "[{\"code\":\"aSavedCode1\",\"price\":5,\"stock\":1,\"valid\":true,\"currency\":\"EUR\"},"
+                + "{\"code\":\"anUnsavedCode\",\"description\":\"" + tooLongDescription + "\",\"price\":5,\"currency\":\"EUR\"},"
+                + "{\"code\":\"aSavedCode2\",\"price\":5,\"stock\":1,\"valid\":true,\"currency\":\"EUR\"}]";
+
+        ProductImportReportVO report = importProducts(user, body, MediaType.APPLICATION_JSON);
+
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting("row", "code").containsExactly(tuple(2L, "anUnsavedCode"));
+        assertThat(productRepository.findByCode("aSavedCode1")).isPresent();
+        assertThat(productRepository.findByCode("aSavedCode2")).isPresent();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void importProducts_whenBodyIsNotAnArray_shouldReturnBadRequest(){
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<String> response = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/bulk/"
+                + user.getId(), new HttpEntity<>("{}", headers), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(BAD_REQUEST);
+        assertThat(response.getBody()).isEqualTo("Fisierul de import este invalid!");
+    }
+
     @Test
     public void updateProduct_whenUserIsEditor_shouldUpdateTheProduct() {
 
@@ -288,4 +471,56 @@ class ProductControllerIntegrationTest {
         assertThat(productFromDb.getStock()).isEqualTo(4);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void addStock_whenManyAdminsAddStockToTheSameProductConcurrently_shouldNotLoseUpdates() throws Exception {
+        Product product = utilsComponent.generateProduct("aProductForConcurrentStock");
+        productRepository.save(product);
+        User user = utilsComponent.saveUserWithRole(Roles.ADMIN);
+
+        int numberOfRequests = 160;
+        AtomicInteger appliedRequests = new AtomicInteger();
+        AtomicInteger conflictingRequests = new AtomicInteger();
+        long retriesBefore = metricsRegistry.getOptimisticLockRetries();
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numberOfRequests; i++) {
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                ResponseEntity<String> response = restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/product/"
+                        + product.getCode() + "/1/" + user.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, String.class);
+                appliedRequests.incrementAndGet();
+                return response;
+            }));
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+            } catch (ExecutionException exception) {
+                assertThat(exception.getCause().getMessage()).contains("409");
+                conflictingRequests.incrementAndGet();
+            }
+        }
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        executorService.shutdown();
+        long retries = metricsRegistry.getOptimisticLockRetries() - retriesBefore;
+        String contention = String.format("%d applied, %d rejected with 409, %d retries, %d requests/s",
+                appliedRequests.get(), conflictingRequests.get(), retries, numberOfRequests * 1000L / elapsedMillis);
+
+        assertThat(conflictingRequests.get()).as(contention).isZero();
+        assertThat(retries).as(contention).isZero();
+        assertThat(appliedRequests.get()).as(contention).isEqualTo(numberOfRequests);
+        Product productFromDb = productRepository.findByCode(product.getCode()).get();
+        assertThat(productFromDb.getStock()).as(contention).isEqualTo(1 + numberOfRequests);
+        productRepository.delete(productFromDb);
+    }
+
+    private ProductImportReportVO importProducts(User user, String body, MediaType mediaType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType);
+        return testRestTemplate.postForObject(UtilsComponent.LOCALHOST + port + "/product/bulk/" + user.getId(),
+                new HttpEntity<>(body, headers), ProductImportReportVO.class);
+    }
+}
@@ -0,0 +1,166 @@
+package com.practice.onlineShop.controllers;
+
+import com.practice.onlineShop.entities.Product;
+import com.practice.onlineShop.entities.User;
+import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.Roles;
+import com.practice.onlineShop.journal.StockJournal;
+import com.practice.onlineShop.repositories.ProductRepository;
+import com.practice.onlineShop.utils.UtilsComponent;
+import com.practice.onlineShop.vos.OrderVO;
+import com.practice.onlineShop.vos.ProductVO;
+import com.practice.onlineShop.vos.StockDiscrepancyVO;
+import com.practice.onlineShop.vos.StockReconciliationReportVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.springframework.http.HttpStatus.OK;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class StockJournalIntegrationTest {
+
+    @TestConfiguration
+    static class StockJournalIntegrationTestContextConfiguration {
+        @Bean
+        public RestTemplate restTemplateForPatch(){
+            return new RestTemplate(new HttpComponentsClientHttpRequestFactory());
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private RestTemplate restTemplateForPatch;
+
+    @Autowired
+    private UtilsComponent utilsComponent;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockJournal stockJournal;
+
+    @Test
+    public void addOrder_whenStockChanges_shouldJournalItAndRebuildTheStockFromTheJournal() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = addProductAsAdmin(admin, "productWithJournaledStock", 5);
+
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(user, product), Void.class);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(user, product), Void.class);
+        restTemplateForPatch.exchange(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/4/"
+                + admin.getId(), HttpMethod.PATCH, HttpEntity.EMPTY, Void.class);
+
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(7);
+        assertThat(stockJournal.getStock(product.getId())).isEqualTo(7L);
+
+        Product driftedProduct = productRepository.findById(product.getId()).get();
+        driftedProduct.setStock(100);
+        productRepository.save(driftedProduct);
+        ResponseEntity<Integer> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/product/stock-journal/rebuild/" + admin.getId(), null, Integer.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(responseEntity.getBody()).isGreaterThanOrEqualTo(1);
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(7);
+    }
+
+    @Test
+    public void rebuildStockFromJournal_whenProductIsOnFlashSale_shouldLeaveItsStockToTheSale() {
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = addProductAsAdmin(admin, "productOnFlashSaleDuringRebuild", 5);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode()
+                + "/flash-sale/" + admin.getId(), null, Void.class);
+        Product driftedProduct = productRepository.findById(product.getId()).get();
+        driftedProduct.setStock(100);
+        productRepository.save(driftedProduct);
+
+        ResponseEntity<Integer> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port
+                + "/product/stock-journal/rebuild/" + admin.getId(), null, Integer.class);
+        int stockAfterRebuild = productRepository.findById(product.getId()).get().getStock();
+        testRestTemplate.delete(UtilsComponent.LOCALHOST + port + "/product/" + product.getCode() + "/flash-sale/"
+                + admin.getId());
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        assertThat(stockAfterRebuild).isEqualTo(100);
+    }
+
+    @Test
+    public void reconcileStock_whenStockWasChangedOutsideTheJournal_shouldReportAndCorrectTheDrift() {
+        User user = utilsComponent.saveUserWithRole(Roles.CLIENT);
+        User admin = utilsComponent.saveUserWithRole(Roles.ADMIN);
+        Product product = addProductAsAdmin(admin, "productWithDriftedStock", 5);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(user, product), Void.class);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/order", createOrderVO(user, product), Void.class);
+        Product driftedProduct = productRepository.findById(product.getId()).get();
+        driftedProduct.setStock(10);
+        productRepository.save(driftedProduct);
+
+        StockReconciliationReportVO report = reconcileStock(admin, false);
+
+        StockDiscrepancyVO discrepancy = getDiscrepancy(report, product);
+        assertThat(discrepancy.getStock()).isEqualTo(10);
+        assertThat(discrepancy.getExpectedStock()).isEqualTo(3);
+        assertThat(discrepancy.isCorrected()).isFalse();
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(10);
+
+        assertThat(getDiscrepancy(reconcileStock(admin, true), product).isCorrected()).isTrue();
+        assertThat(productRepository.findById(product.getId()).get().getStock()).isEqualTo(3);
+        assertThat(getDiscrepancy(reconcileStock(admin, false), product)).isNull();
+    }
+
+    private Product addProductAsAdmin(User admin, String productCode, int stock) {
+        ProductVO productVO = new ProductVO();
+        productVO.setCode(productCode);
+        productVO.setPrice(10);
+        productVO.setCurrency(Currencies.RON);
+        productVO.setStock(stock);
+        productVO.setDescription("a product added by an admin");
+        productVO.setValid(true);
+        testRestTemplate.postForEntity(UtilsComponent.LOCALHOST + port + "/product/" + admin.getId(), productVO, Void.class);
+        return productRepository.findByCode(productCode).get();
+    }
+
+    private StockReconciliationReportVO reconcileStock(User admin, boolean autoCorrect) {
+        ResponseEntity<StockReconciliationReportVO> responseEntity = testRestTemplate.postForEntity(UtilsComponent.LOCALHOST
+                + port + "/product/stock-reconciliation/" + admin.getId() + "?autoCorrect=" + autoCorrect, null,
+                StockReconciliationReportVO.class);
+        assertThat(responseEntity.getStatusCode()).isEqualTo(OK);
+        return responseEntity.getBody();
+    }
+
+    private StockDiscrepancyVO getDiscrepancy(StockReconciliationReportVO report, Product product) {
+        return report.getDiscrepancyDetails().stream()
+                .filter(discrepancy -> discrepancy.getProductId() == product.getId())
+                .findFirst()
+                .orElse(null);
+    }
+
+    private OrderVO createOrderVO(User user, Product product) {
+        OrderVO orderVO = new OrderVO();
+        orderVO.setUserId((int) user.getId());
+        Map<Integer, Integer> orderMap = new HashMap<>();
+        orderMap.put((int) product.getId(), 1);
+        orderVO.setProductsIdsToQuantity(orderMap);
+        return orderVO;
+    }
+}
@@ -0,0 +1,140 @@
+package com.practice.onlineShop.journal;
+
+import com.practice.onlineShop.enums.StockMovementReason;
+import com.practice.onlineShop.logging.EventLogger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StockJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StockJournal stockJournal;
+
+    @After
+    public void closeJournal() throws IOException, InterruptedException {
+        stockJournal.close();
+    }
+
+    @Test
+    public void open_whenTheJournalWasClosed_shouldReplayTheStock() throws IOException, InterruptedException {
+        stockJournal = openJournal(4096, 1000);
+        stockJournal.initialize(Collections.singletonMap(1L, 10L), Collections.singletonMap(1L, 12L));
+        stockJournal.appendAfterCommit(1, -3, StockMovementReason.ORDER_PLACED);
+        stockJournal.appendAfterCommit(2, 5, StockMovementReason.PRODUCT_ADDED);
+        stockJournal.appendAfterCommit(2, 0, StockMovementReason.PRODUCT_DELETED);
+        stockJournal.appendAfterCommit(3, 7, StockMovementReason.PRODUCT_ADDED);
+        stockJournal.close();
+
+        stockJournal = openJournal(4096, 1000);
+
+        assertThat(stockJournal.isEmpty()).isFalse();
+        assertThat(stockJournal.getStock(1)).isEqualTo(7L);
+        assertThat(stockJournal.getStock(2)).isNull();
+        assertThat(stockJournal.getStock(3)).isEqualTo(7L);
+        assertThat(stockJournal.getAdjustments(1)).isEqualTo(12L);
+        assertThat(stockJournal.getAdjustments(2)).isNull();
+        assertThat(stockJournal.getAdjustments(3)).isEqualTo(7L);
+        assertThat(stockJournal.getStats().getLastSequence()).isEqualTo(4);
+        assertThat(stockJournal.getStats().getDurableSequence()).isEqualTo(4);
+    }
+
+    @Test
+    public void append_whenSegmentsFillUp_shouldRollThemAndDeleteTheOnesNoSnapshotNeeds() throws IOException, InterruptedException {
+        stockJournal = openJournal(JournalSegment.RECORD_SIZE * 2, 1000);
+        for (int i = 0; i < 10; i++) {
+            stockJournal.appendAfterCommit(1, 1, StockMovementReason.STOCK_ADDED);
+        }
+        assertThat(listFiles(".seg").size()).isEqualTo(5);
+
+        stockJournal.snapshot();
+        stockJournal.appendAfterCommit(1, 1, StockMovementReason.STOCK_ADDED);
+        stockJournal.snapshot();
+
+        assertThat(listFiles(".snap").size()).isEqualTo(2);
+        assertThat(listFiles(".seg").size()).isLessThanOrEqualTo(2);
+        assertThat(stockJournal.getStock(1)).isEqualTo(11L);
+    }
+
+    @Test
+    public void open_whenTheLastRecordIsTorn_shouldReplayUpToItAndAppendOverIt() throws IOException, InterruptedException {
+        stockJournal = openJournal(4096, 1000);
+        stockJournal.appendAfterCommit(1, 4, StockMovementReason.PRODUCT_ADDED);
+        stockJournal.appendAfterCommit(1, -1, StockMovementReason.ORDER_PLACED);
+        stockJournal.appendAfterCommit(1, -2, StockMovementReason.ORDER_PLACED);
+        stockJournal.close();
+        // only the records are left, as if the process had died before writing the snapshot
+        for (Path snapshot : listFiles(".snap")) {
+            Files.delete(snapshot);
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(listFiles(".seg").get(0).toFile(), "rw")) {
+            segment.seek(JournalSegment.RECORD_SIZE * 2 + 20);
+            segment.write(0x7F);
+        }
+
+        stockJournal = openJournal(4096, 1000);
+        assertThat(stockJournal.getStock(1)).isEqualTo(3L);
+        stockJournal.appendAfterCommit(1, 5, StockMovementReason.STOCK_ADDED);
+        stockJournal.close();
+        for (Path snapshot : listFiles(".snap")) {
+            Files.delete(snapshot);
+        }
+
+        stockJournal = openJournal(4096, 1000);
+        assertThat(stockJournal.getStock(1)).isEqualTo(8L);
+        assertThat(stockJournal.getStats().getLastSequence()).isEqualTo(3);
+    }
+
+    @Test
+    public void append_whenSnapshotIntervalIsReached_shouldSnapshotInTheBackground() throws IOException, InterruptedException {
+        stockJournal = openJournal(4096, 3);
+        for (int i = 0; i < 3; i++) {
+            stockJournal.appendAfterCommit(1, 1, StockMovementReason.STOCK_ADDED);
+        }
+
+        for (int i = 0; i < 100 && stockJournal.getStats().getSnapshotSequence() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(stockJournal.getStats().getSnapshotSequence()).isEqualTo(3);
+    }
+
+    @Test
+    public void close_whenDeleteOnCloseIsSet_shouldDeleteTheDirectory() throws IOException, InterruptedException {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("run");
+        stockJournal = new StockJournal(true, directory.toString(), 4096, 0, 1000, true, new EventLogger(false, 8));
+        stockJournal.open();
+        stockJournal.appendAfterCommit(1, 4, StockMovementReason.PRODUCT_ADDED);
+
+        stockJournal.close();
+
+        assertThat(Files.exists(directory)).isFalse();
+    }
+
+    private StockJournal openJournal(int segmentSize, long snapshotIntervalRecords) throws IOException {
+        StockJournal journal = new StockJournal(true, temporaryFolder.getRoot().getPath(), segmentSize, 0,
+                snapshotIntervalRecords, false, new EventLogger(false, 8));
+        journal.open();
+        return journal;
+    }
+
+    private List<Path> listFiles(String extension) throws IOException {
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            return files.filter(file -> file.toString().endsWith(extension)).sorted().collect(Collectors.toList());
+        }
+    }
+}
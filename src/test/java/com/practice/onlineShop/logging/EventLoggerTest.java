@@ -0,0 +1,94 @@
+package com.practice.onlineShop.logging;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventLoggerTest {
+
+    @Test
+    public void log_shouldWriteOneKeyValueLinePerEvent() throws InterruptedException {
+        StringWriter output = new StringWriter();
+        EventLogger eventLogger = new EventLogger(true, 16, output);
+
+        eventLogger.log("order.deliver", "customerId", 3L, "orderId", 7);
+        eventLogger.log("product.add.after");
+        eventLogger.stop();
+
+        String[] lines = output.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("ts=").endsWith(" event=order.deliver customerId=3 orderId=7");
+        assertThat(lines[1]).endsWith(" event=product.add.after");
+    }
+
+    @Test
+    public void log_whenBufferIsFull_shouldDropTheEventInsteadOfBlocking() throws InterruptedException {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWriter = new CountDownLatch(1);
+        Writer blockingWriter = new StringWriter() {
+            @Override
+            public void write(char[] chars, int off, int len) {
+                writerBlocked.countDown();
+                try {
+                    releaseWriter.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(chars, off, len);
+            }
+        };
+        EventLogger eventLogger = new EventLogger(true, 4, blockingWriter);
+        eventLogger.log("a.first.event");
+        assertThat(writerBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 64; i++) {
+            eventLogger.log("an.event", "i", i);
+        }
+
+        assertThat(eventLogger.getDroppedEvents()).isEqualTo(64 - 4);
+        releaseWriter.countDown();
+        eventLogger.stop();
+        assertThat(eventLogger.getPendingEvents()).isZero();
+    }
+
+    @Test
+    public void log_whenAValueChangesOrFailsToFormat_shouldWriteItAsItWasWhenLogged() throws InterruptedException {
+        StringWriter output = new StringWriter();
+        EventLogger eventLogger = new EventLogger(true, 16, output);
+        StringBuilder mutableValue = new StringBuilder("before");
+        Object failingValue = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException();
+            }
+        };
+
+        eventLogger.log("a.mutable.event", "value", mutableValue);
+        mutableValue.replace(0, mutableValue.length(), "after");
+        eventLogger.log("a.failing.event", "value", failingValue);
+        eventLogger.log("a.later.event");
+        eventLogger.stop();
+
+        String[] lines = output.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).endsWith(" event=a.mutable.event value=before");
+        assertThat(lines[1]).endsWith(" event=a.failing.event value=<IllegalStateException>");
+        assertThat(lines[2]).endsWith(" event=a.later.event");
+    }
+
+    @Test
+    public void log_whenDisabled_shouldWriteNothing() throws InterruptedException {
+        StringWriter output = new StringWriter();
+        EventLogger eventLogger = new EventLogger(false, 16, output);
+
+        eventLogger.log("order.deliver", "customerId", 3L);
+        eventLogger.stop();
+
+        assertThat(output.toString()).isEmpty();
+    }
+}
@@ -0,0 +1,39 @@
+package com.practice.onlineShop.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void getValueAtPercentile_shouldStayWithinTheBucketPrecision() {
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            latencyHistogram.record(value * 1000);
+        }
+
+        assertThat(latencyHistogram.getCount()).isEqualTo(100_000);
+        assertThat((double) latencyHistogram.getValueAtPercentile(50)).isCloseTo(50_000_000, within(50_000_000 * 0.07));
+        assertThat((double) latencyHistogram.getValueAtPercentile(99)).isCloseTo(99_000_000, within(99_000_000 * 0.07));
+        assertThat((double) latencyHistogram.getValueAtPercentile(99.9)).isCloseTo(99_900_000, within(99_900_000 * 0.07));
+    }
+
+    @Test
+    public void getValueAtPercentile_whenEmpty_shouldReturnZero() {
+        assertThat(new LatencyHistogram().getValueAtPercentile(99)).isZero();
+    }
+
+    @Test
+    public void indexOf_shouldMapEveryValueIntoABucketThatContainsIt() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(LatencyHistogram.highestValueOf(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(LatencyHistogram.highestValueOf(index - 1)).isLessThan(value);
+            }
+        }
+    }
+}
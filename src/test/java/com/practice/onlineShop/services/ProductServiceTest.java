@@ -1,11 +1,16 @@
 package com.practice.onlineShop.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.onlineShop.cache.ProductCache;
 import com.practice.onlineShop.entities.Product;
 import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.exceptions.ConcurrentUpdateException;
 import com.practice.onlineShop.exceptions.InvalidProductCodeException;
+import com.practice.onlineShop.logging.EventLogger;
 import com.practice.onlineShop.mappers.ProductMapper;
 import com.practice.onlineShop.repositories.ProductRepository;
 import com.practice.onlineShop.vos.ProductVO;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -13,14 +18,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.EntityManager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,9 +46,27 @@ public class ProductServiceTest {
         @MockBean
         private ProductRepository productRepository;
 
+        @MockBean
+        private EntityManager entityManager;
+
+        @MockBean
+        private EventLogger eventLogger;
+
+        @MockBean
+        private StockService stockService;
+
+        @MockBean
+        private FlashSaleService flashSaleService;
+
         @Bean
         public ProductService productService() {
-            return new ProductService(productMapper, productRepository);
+            return new ProductService(productMapper, productRepository, entityManager, new ObjectMapper(),
+                    productCache(), eventLogger, stockService, flashSaleService);
+        }
+
+        @Bean
+        public ProductCache productCache() {
+            return new ProductCache(100, 60);
         }
     }
 
@@ -51,6 +79,14 @@ public class ProductServiceTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductCache productCache;
+
+    @Before
+    public void clearProductCache() {
+        productCache.clear();
+    }
+
     @Test
     public void addProduct() {
 
@@ -107,6 +143,57 @@ public class ProductServiceTest {
         verify(productMapper).toVO(product);
     }
 
+    @Test
+    public void getProduct_whenCalledTwice_shouldQueryTheDbOnce() throws InvalidProductCodeException {
+        Product product = new Product();
+        product.setCode("aCachedCode");
+        when(productRepository.findByCode(any())).thenReturn(Optional.of(product));
+        when(productMapper.toVO(any())).thenReturn(new ProductVO());
+        long hitsBefore = productCache.getStats().getHits();
+
+        productService.getProduct("aCachedCode");
+        productService.getProduct("aCachedCode");
+
+        verify(productRepository, times(1)).findByCode("aCachedCode");
+        assertThat(productCache.getStats().getHits()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    public void getProduct_whenCodeIsUnknown_shouldCacheTheMiss() {
+        when(productRepository.findByCode(any())).thenReturn(Optional.empty());
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                productService.getProduct("aBogusCode");
+                assert false;
+            } catch (InvalidProductCodeException e) {
+                assert true;
+            }
+        }
+
+        verify(productRepository, times(1)).findByCode("aBogusCode");
+    }
+
+    @Test
+    public void deleteProduct_whenProductIsCached_shouldInvalidateIt() throws InvalidProductCodeException {
+        Product product = new Product();
+        product.setCode("aDeletedCode");
+        when(productRepository.findByCode(any())).thenReturn(Optional.of(product));
+        when(productMapper.toVO(any())).thenReturn(new ProductVO());
+        productService.getProduct("aDeletedCode");
+
+        productService.deleteProduct("aDeletedCode", 1L);
+        when(productRepository.findByCode(any())).thenReturn(Optional.empty());
+
+        try {
+            productService.getProduct("aDeletedCode");
+        } catch (InvalidProductCodeException e) {
+            assert true;
+            return;
+        }
+        assert false;
+    }
+
     @Test
     public void getProducts() {
         ArrayList<Product> products = new ArrayList<>();
@@ -122,23 +209,34 @@ public class ProductServiceTest {
         ProductVO productVO2 = new ProductVO();
         productVO2.setCode("aCode2");
 
-        when(productRepository.findAll()).thenReturn(products);
+        when(productRepository.findPageAfter(eq(0L), any(), any(), any(), any(), any())).thenReturn(products);
         when(productMapper.toVO(product1)).thenReturn(productVO1);
         when(productMapper.toVO(product2)).thenReturn(productVO2);
 
-        List<ProductVO> productList = productService.getProducts();
+        List<ProductVO> productList = productService.getProducts(null, null, null, null, null, null);
 
         assertThat(productList).hasSize(2);
         assertThat(productList).containsOnly(productVO1, productVO2);
 
-        verify(productRepository).findAll();
+        verify(productRepository).findPageAfter(0L, null, null, null, null,
+                PageRequest.of(0, ProductService.DEFAULT_PAGE_SIZE));
         verify(productMapper).toVO(product1);
         verify(productMapper).toVO(product2);
 
     }
 
     @Test
-    public void updateProduct_whenProductCodeIsNull_shouldThrowAnException() {
+    public void getProducts_whenLimitIsTooBig_shouldCapThePageSize() {
+        when(productRepository.findPageAfter(anyLong(), any(), any(), any(), any(), any())).thenReturn(new ArrayList<>());
+
+        productService.getProducts(10L, 100000, true, Currencies.RON, 1.0, 2.0);
+
+        verify(productRepository).findPageAfter(10L, true, Currencies.RON, 1.0, 2.0,
+                PageRequest.of(0, ProductService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    public void updateProduct_whenProductCodeIsNull_shouldThrowAnException() throws ConcurrentUpdateException {
         ProductVO productVO = new ProductVO();
         // InvalidProductCodeException invalidProductCodeException = catchThrowableOfType(() -> productService.updateProduct(productVO, 1L), InvalidProductCodeException.class);
         try {
@@ -151,7 +249,7 @@ public class ProductServiceTest {
     }
 
     @Test
-    public void updateProduct_whenProductCodeIsInvalid_shouldThrowAnException() {
+    public void updateProduct_whenProductCodeIsInvalid_shouldThrowAnException() throws ConcurrentUpdateException {
         ProductVO productVO = new ProductVO();
         productVO.setCode("Asd");
 
@@ -165,7 +263,7 @@ public class ProductServiceTest {
     }
 
     @Test
-    public void updateProduct_whenProductCodeIsValid_shouldUpdateTheProduct() throws InvalidProductCodeException {
+    public void updateProduct_whenProductCodeIsValid_shouldUpdateTheProduct() throws InvalidProductCodeException, ConcurrentUpdateException {
         ProductVO productVO = new ProductVO();
         productVO.setCode("a new Code");
         productVO.setDescription("a new Description");
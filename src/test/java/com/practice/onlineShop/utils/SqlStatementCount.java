@@ -0,0 +1,29 @@
+package com.practice.onlineShop.utils;
+
+import com.practice.onlineShop.metrics.SqlStatistics;
+import com.practice.onlineShop.metrics.SqlStatisticsFilter;
+import org.springframework.http.ResponseEntity;
+
+public final class SqlStatementCount {
+
+    private SqlStatementCount() {
+    }
+
+    public static int of(ResponseEntity<?> responseEntity) {
+        String statementCount = responseEntity.getHeaders().getFirst(SqlStatisticsFilter.STATEMENT_COUNT_HEADER);
+        if (statementCount == null) {
+            throw new IllegalStateException("The response has no " + SqlStatisticsFilter.STATEMENT_COUNT_HEADER + " header");
+        }
+        return Integer.parseInt(statementCount);
+    }
+
+    public static int during(Runnable action) {
+        SqlStatistics sqlStatistics = SqlStatistics.begin();
+        try {
+            action.run();
+            return sqlStatistics.getStatementCount();
+        } finally {
+            SqlStatistics.end();
+        }
+    }
+}
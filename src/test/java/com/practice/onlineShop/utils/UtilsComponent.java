@@ -2,6 +2,7 @@ package com.practice.onlineShop.utils;
 
 import com.practice.onlineShop.entities.*;
 import com.practice.onlineShop.enums.Currencies;
+import com.practice.onlineShop.enums.OrderStatus;
 import com.practice.onlineShop.enums.Roles;
 import com.practice.onlineShop.repositories.OrderRepository;
 import com.practice.onlineShop.repositories.ProductRepository;
@@ -72,7 +73,7 @@ public class UtilsComponent {
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public Orders saveDeliveredOrder(User client, Product product) {
         Orders orderWithProducts = generateOrderItems(product, client);
-        orderWithProducts.setDelivered(true);
+        orderWithProducts.setStatus(OrderStatus.DELIVERED);
         orderRepository.save(orderWithProducts);
         return orderWithProducts;
     }
@@ -85,10 +86,9 @@ public class UtilsComponent {
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public Orders saveCanceledAndDeliveredOrder(User client, Product product) {
+    public Orders saveCanceledOrder(User client, Product product) {
         Orders orderWithProducts = generateOrderItems(product, client);
-        orderWithProducts.setCanceled(true);
-        orderWithProducts.setDelivered(true);
+        orderWithProducts.setStatus(OrderStatus.CANCELED);
         orderRepository.save(orderWithProducts);
         return orderWithProducts;
     }